@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The number of downloads from one host allowed to run at the same time, adapted to how the host copes: additive
+ * increase while its latency stays flat and all permits are in use, multiplicative decrease on a failure or a latency
+ * spike.
+ */
+final class AdaptiveConcurrencyLimit {
+
+    /**
+     * Factor applied to the limit when a download fails.
+     */
+    private static final double ERROR_BACKOFF = 0.5;
+
+    /**
+     * Factor applied to the limit when the latency rises above {@link #LATENCY_TOLERANCE} times the baseline.
+     */
+    private static final double LATENCY_BACKOFF = 0.8;
+
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    /**
+     * Weight of a new sample in the smoothed latency.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * How fast the baseline follows latencies above it, so one lucky sample does not hold it down for good.
+     */
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int maxLimit;
+
+    private double limit;
+
+    private int inFlight;
+
+    private double smoothedLatency = -1;
+
+    private double baselineLatency = -1;
+
+    /**
+     * @param initialLimit the limit to start with.
+     * @param maxLimit the limit never grows above.
+     */
+    AdaptiveConcurrencyLimit(int initialLimit, int maxLimit) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+    }
+
+    /**
+     * Waits for a permit.
+     *
+     * @param timeout how long to wait at most.
+     * @param unit the unit of the timeout.
+     * @return whether a permit was acquired.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    synchronized boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (inFlight >= getLimit()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Returns a permit and adapts the limit to the outcome of the download that held it.
+     *
+     * @param latencyNanos the time the host took to start sending.
+     * @param failed whether the download failed in a way that hints at an overloaded host.
+     */
+    synchronized void release(long latencyNanos, boolean failed) {
+        boolean saturated = inFlight >= getLimit();
+        inFlight--;
+
+        if (failed) {
+            limit = Math.max(1, limit * ERROR_BACKOFF);
+        } else {
+            smoothedLatency =
+                    (smoothedLatency < 0) ? latencyNanos : smoothedLatency + SMOOTHING * (latencyNanos - smoothedLatency);
+            baselineLatency = (baselineLatency < 0 || latencyNanos < baselineLatency)
+                    ? latencyNanos
+                    : baselineLatency + BASELINE_DRIFT * (latencyNanos - baselineLatency);
+
+            if (smoothedLatency > LATENCY_TOLERANCE * baselineLatency) {
+                limit = Math.max(1, limit * LATENCY_BACKOFF);
+            } else if (saturated) {
+                // About one more permit per round of downloads that used them all.
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Returns a permit without adapting the limit, for a download that ended without telling anything about the host.
+     */
+    synchronized void abandon() {
+        inFlight--;
+
+        notifyAll();
+    }
+
+    /**
+     * @return the current limit.
+     */
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return the number of permits in use.
+     */
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+}
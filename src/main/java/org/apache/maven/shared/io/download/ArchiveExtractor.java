@@ -0,0 +1,479 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Unpacks a zip, tar or gzipped tar archive from a stream into a directory, in one pass, so the archive never has to
+ * be stored. Entries whose path would leave the directory fail the extraction; links in tar archives are skipped.
+ * Small entries can be written by several threads, while the stream goes on to the next entries.
+ */
+final class ArchiveExtractor {
+
+    /**
+     * Archive formats, named by the extension of the archive.
+     */
+    enum Format {
+        ZIP,
+        TAR,
+        TAR_GZ;
+
+        /**
+         * @param path the path of the archive.
+         * @return the format, or {@code null} if the extension names none.
+         */
+        static Format of(String path) {
+            String name = path.toLowerCase(Locale.ROOT);
+
+            if (name.endsWith(".zip") || name.endsWith(".jar") || name.endsWith(".war") || name.endsWith(".ear")) {
+                return ZIP;
+            }
+            if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+                return TAR_GZ;
+            }
+            if (name.endsWith(".tar")) {
+                return TAR;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Largest entry handed to the writer threads. Larger entries are written while they are read.
+     */
+    private static final int MAX_QUEUED_ENTRY = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int TAR_BLOCK = 512;
+
+    private final Path directory;
+
+    private final int writers;
+
+    ArchiveExtractor(Path directory, int writers) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.writers = Math.max(1, writers);
+    }
+
+    /**
+     * Extracts the archive, reading the stream up to the end of the archive.
+     *
+     * @param in the archive.
+     * @param format the format of the archive.
+     * @return the number of files extracted.
+     * @throws IOException if the archive cannot be read, is malformed, or a file cannot be written.
+     */
+    int extract(InputStream in, Format format) throws IOException {
+        Files.createDirectories(directory);
+
+        Writers output = new Writers();
+        try {
+            switch (format) {
+                case ZIP:
+                    extractZip(in, output);
+                    break;
+                case TAR_GZ:
+                    extractTar(new GZIPInputStream(in, BUFFER_SIZE), output);
+                    break;
+                default:
+                    extractTar(new BufferedInputStream(in, BUFFER_SIZE), output);
+                    break;
+            }
+
+            return output.finish();
+        } finally {
+            output.shutdown();
+        }
+    }
+
+    private void extractZip(InputStream in, Writers output) throws IOException {
+        ZipInputStream zip = new ZipInputStream(in);
+
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            Path target = resolve(entry.getName());
+
+            if (entry.isDirectory()) {
+                Files.createDirectories(target);
+            } else {
+                output.write(target, zip, entry.getSize(), entry.getTime(), false);
+            }
+        }
+    }
+
+    private void extractTar(InputStream in, Writers output) throws IOException {
+        byte[] header = new byte[TAR_BLOCK];
+        String longName = null;
+
+        while (readBlock(in, header)) {
+            if (isZeros(header)) {
+                // End of archive.
+                return;
+            }
+
+            String name = longName != null ? longName : tarName(header);
+            longName = null;
+
+            long size = octal(header, 124, 12);
+            long mtime = octal(header, 136, 12);
+            long mode = octal(header, 100, 8);
+            char type = (char) header[156];
+
+            InputStream content = new BoundedInputStream(in, size);
+
+            switch (type) {
+                case 'L':
+                    // GNU long name of the next entry.
+                    longName = trimNul(new String(readAll(content, size), StandardCharsets.UTF_8));
+                    break;
+                case 'x':
+                    // PAX extended header of the next entry, of which only the path matters here.
+                    longName = paxPath(readAll(content, size));
+                    break;
+                case '5':
+                    Files.createDirectories(resolve(name));
+                    break;
+                case '0':
+                case '\0':
+                case '7':
+                    output.write(resolve(name), content, size, mtime * 1000, (mode & 0100) != 0);
+                    break;
+                default:
+                    // Links, devices, global headers: nothing a build needs, and links could point outside.
+                    break;
+            }
+
+            skipFully(content, ((BoundedInputStream) content).remaining());
+            skipFully(in, (TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK);
+        }
+    }
+
+    /**
+     * @param name the name of an entry.
+     * @return the path to extract it to.
+     * @throws IOException if the path would be outside the directory.
+     */
+    private Path resolve(String name) throws IOException {
+        Path target = directory.resolve(name).normalize();
+
+        if (!target.startsWith(directory)) {
+            throw new IOException("Archive entry is outside the target directory: " + name);
+        }
+
+        return target;
+    }
+
+    /**
+     * Writes file entries, inline or, for small ones, on writer threads. The bytes of queued entries are bounded, so
+     * the reader waits when the writers are behind.
+     */
+    private final class Writers {
+
+        private final ExecutorService executor;
+
+        private final Semaphore queuedBytes;
+
+        private final List<Future<?>> pending = new ArrayList<>();
+
+        private int files;
+
+        Writers() {
+            if (writers > 1) {
+                executor = Executors.newFixedThreadPool(writers, runnable -> {
+                    Thread thread = new Thread(runnable, "maven-shared-io-extract");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                queuedBytes = new Semaphore(2 * writers * MAX_QUEUED_ENTRY);
+            } else {
+                executor = null;
+                queuedBytes = null;
+            }
+        }
+
+        void write(Path target, InputStream content, long size, long time, boolean executable) throws IOException {
+            Files.createDirectories(target.getParent());
+            files++;
+
+            if (executor == null || size < 0 || size > MAX_QUEUED_ENTRY) {
+                Files.copy(content, target, StandardCopyOption.REPLACE_EXISTING);
+                finishFile(target, time, executable);
+                return;
+            }
+
+            byte[] bytes = readAll(content, size);
+            int permits = Math.max(1, bytes.length);
+
+            try {
+                queuedBytes.acquire(permits);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while extracting " + target, e);
+            }
+
+            pending.add(executor.submit(() -> {
+                try {
+                    Files.write(target, bytes);
+                    finishFile(target, time, executable);
+                } finally {
+                    queuedBytes.release(permits);
+                }
+                return null;
+            }));
+
+            pending.removeIf(Future::isDone);
+        }
+
+        int finish() throws IOException {
+            for (Future<?> future : pending) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while extracting", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+                }
+            }
+
+            return files;
+        }
+
+        void shutdown() {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static void finishFile(Path target, long time, boolean executable) throws IOException {
+        if (time > 0) {
+            Files.setLastModifiedTime(target, FileTime.fromMillis(time));
+        }
+        if (executable) {
+            target.toFile().setExecutable(true, false);
+        }
+    }
+
+    private static String tarName(byte[] header) {
+        String name = field(header, 0, 100);
+
+        if ("ustar".equals(field(header, 257, 6).trim())) {
+            String prefix = field(header, 345, 155);
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+        }
+
+        return name;
+    }
+
+    /**
+     * @return the path of a PAX extended header, made of {@code "<length> <key>=<value>\n"} records, or
+     *         {@code null} if it has none.
+     */
+    private static String paxPath(byte[] records) throws IOException {
+        int position = 0;
+
+        while (position < records.length) {
+            int space = position;
+            while (space < records.length && records[space] != ' ') {
+                space++;
+            }
+
+            int length;
+            try {
+                length = Integer.parseInt(new String(records, position, space - position, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed PAX header", e);
+            }
+            if (length <= space - position || position + length > records.length) {
+                throw new IOException("Malformed PAX header");
+            }
+
+            String record = new String(records, space + 1, position + length - space - 2, StandardCharsets.UTF_8);
+            if (record.startsWith("path=")) {
+                return record.substring("path=".length());
+            }
+
+            position += length;
+        }
+
+        return null;
+    }
+
+    private static String field(byte[] header, int offset, int length) {
+        return trimNul(new String(header, offset, length, StandardCharsets.UTF_8));
+    }
+
+    private static String trimNul(String value) {
+        int nul = value.indexOf('\0');
+
+        return (nul >= 0) ? value.substring(0, nul) : value;
+    }
+
+    /**
+     * Parses a numeric field: octal digits, or a big-endian binary number if the first byte has its high bit set.
+     */
+    private static long octal(byte[] header, int offset, int length) throws IOException {
+        if ((header[offset] & 0x80) != 0) {
+            long value = 0;
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (header[i] & 0xff);
+            }
+            return value;
+        }
+
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = header[i];
+            if (b == 0 || b == ' ') {
+                if (value != 0) {
+                    break;
+                }
+                continue;
+            }
+            if (b < '0' || b > '7') {
+                throw new IOException("Malformed tar header");
+            }
+            value = (value << 3) | (b - '0');
+        }
+        return value;
+    }
+
+    private static boolean isZeros(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether a whole block was read, false at the end of the stream.
+     */
+    private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+        int read = 0;
+        while (read < block.length) {
+            int n = in.read(block, read, block.length - read);
+            if (n == -1) {
+                if (read == 0) {
+                    return false;
+                }
+                throw new EOFException("Truncated tar archive");
+            }
+            read += n;
+        }
+        return true;
+    }
+
+    private static byte[] readAll(InputStream in, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Archive entry too large: " + size);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size >= 0 ? (int) size : BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(1, count))];
+        while (count > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, count));
+            if (read == -1) {
+                throw new EOFException("Truncated tar archive");
+            }
+            count -= read;
+        }
+    }
+
+    /**
+     * The content of one tar entry, which ends where the entry does. Closing it does not close the archive.
+     */
+    private static final class BoundedInputStream extends InputStream {
+
+        private final InputStream in;
+
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long size) {
+            this.in = in;
+            this.remaining = size;
+        }
+
+        long remaining() {
+            return remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Truncated tar archive");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read == -1) {
+                throw new EOFException("Truncated tar archive");
+            }
+            remaining -= read;
+            return read;
+        }
+    }
+}
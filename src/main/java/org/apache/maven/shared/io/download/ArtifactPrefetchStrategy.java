@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prefetches what is requested after an artifact from a Maven repository: its SHA-1 checksum and, for the main
+ * artifact of a module, its POM. Only URLs following the repository layout
+ * {@code .../artifactId/version/artifactId-version[-classifier].extension} are considered.
+ */
+public class ArtifactPrefetchStrategy implements PrefetchStrategy {
+
+    /**
+     * The extensions of the checksums and signatures a repository publishes beside each file, which have no checksum
+     * or POM of their own.
+     */
+    private static final List<String> SIDECAR_EXTENSIONS =
+            Arrays.asList(".sha1", ".md5", ".sha256", ".sha512", ".asc");
+
+    /** {@inheritDoc} */
+    @Override
+    public List<String> getRelatedUrls(String url) {
+        if (url.indexOf('?') >= 0 || url.indexOf('#') >= 0) {
+            return Collections.emptyList();
+        }
+
+        String[] segments = url.split("/");
+        if (segments.length < 4) {
+            return Collections.emptyList();
+        }
+
+        String name = segments[segments.length - 1];
+        String version = segments[segments.length - 2];
+        String artifactId = segments[segments.length - 3];
+        String prefix = artifactId + "-" + version;
+
+        if (!name.startsWith(prefix) || isSidecar(name) || name.endsWith(".pom")) {
+            return Collections.emptyList();
+        }
+
+        List<String> related = new ArrayList<>(2);
+        related.add(url + ".sha1");
+
+        // A classified artifact, such as sources, shares the POM of the main artifact, which was likely fetched
+        // already.
+        String extension = name.substring(prefix.length());
+        if (extension.startsWith(".") && extension.indexOf('.', 1) < 0) {
+            related.add(url.substring(0, url.length() - extension.length()) + ".pom");
+        }
+
+        return related;
+    }
+
+    private static boolean isSidecar(String name) {
+        for (String extension : SIDECAR_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import org.apache.maven.shared.io.download.DefaultDownloadManager.CircuitState;
+
+/**
+ * Stops downloads from a host that failed repeatedly, so they fail at once instead of each waiting for its own
+ * connect timeout. After a cool-down, one download is let through as a probe; it closes the circuit again if it
+ * succeeds, and opens it for another cool-down if it fails.
+ */
+final class CircuitBreaker {
+
+    private final int failureThreshold;
+
+    private final long coolDownNanos;
+
+    private CircuitState state = CircuitState.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openedAt;
+
+    private boolean probing;
+
+    /**
+     * @param failureThreshold the number of failures in a row that opens the circuit.
+     * @param coolDownNanos how long the circuit stays open before a probe is let through.
+     */
+    CircuitBreaker(int failureThreshold, long coolDownNanos) {
+        this.failureThreshold = failureThreshold;
+        this.coolDownNanos = coolDownNanos;
+    }
+
+    /**
+     * @return whether a download may go ahead. If it may, one of {@link #onSuccess()}, {@link #onFailure()} or
+     *         {@link #onAbandoned()} must follow.
+     */
+    synchronized boolean allow() {
+        if (state == CircuitState.OPEN && System.nanoTime() - openedAt >= coolDownNanos) {
+            state = CircuitState.HALF_OPEN;
+        }
+
+        if (state == CircuitState.HALF_OPEN) {
+            if (probing) {
+                return false;
+            }
+
+            probing = true;
+            return true;
+        }
+
+        return state == CircuitState.CLOSED;
+    }
+
+    /**
+     * The host answered, whether or not it had the resource.
+     */
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probing = false;
+        state = CircuitState.CLOSED;
+    }
+
+    /**
+     * The host could not be connected to, or the transfer broke off.
+     *
+     * @return whether this failure opened the circuit.
+     */
+    synchronized boolean onFailure() {
+        probing = false;
+        consecutiveFailures++;
+
+        if (state == CircuitState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = CircuitState.OPEN;
+            openedAt = System.nanoTime();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * The download ended without telling anything about the host, such as when it was cancelled.
+     */
+    synchronized void onAbandoned() {
+        probing = false;
+    }
+
+    /**
+     * @return the state, as of the last download that asked.
+     */
+    synchronized CircuitState getState() {
+        return state;
+    }
+
+    /**
+     * @return nanoseconds until a probe is let through, 0 unless the circuit is open.
+     */
+    synchronized long remainingCoolDownNanos() {
+        return (state == CircuitState.OPEN) ? Math.max(0, coolDownNanos - (System.nanoTime() - openedAt)) : 0;
+    }
+}
@@ -18,29 +18,66 @@
  */
 package org.apache.maven.shared.io.download;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.RandomAccessFile;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.maven.artifact.manager.WagonManager;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.shared.io.logging.DefaultMessageHolder;
 import org.apache.maven.shared.io.logging.MessageHolder;
 import org.apache.maven.wagon.ConnectionException;
 import org.apache.maven.wagon.ResourceDoesNotExistException;
+import org.apache.maven.wagon.StreamingWagon;
 import org.apache.maven.wagon.TransferFailedException;
 import org.apache.maven.wagon.UnsupportedProtocolException;
 import org.apache.maven.wagon.Wagon;
 import org.apache.maven.wagon.authentication.AuthenticationException;
+import org.apache.maven.wagon.authentication.AuthenticationInfo;
 import org.apache.maven.wagon.authorization.AuthorizationException;
+import org.apache.maven.wagon.events.TransferEvent;
 import org.apache.maven.wagon.events.TransferListener;
+import org.apache.maven.wagon.observers.AbstractTransferListener;
+import org.apache.maven.wagon.proxy.ProxyInfo;
 import org.apache.maven.wagon.repository.Repository;
+import org.apache.maven.wagon.resource.Resource;
 
 /**
  * The Implementation of the {@link DownloadManager}
@@ -53,10 +90,209 @@ public class DefaultDownloadManager implements DownloadManager {
      */
     public static final String ROLE_HINT = "default";
 
+    /**
+     * Name of the index in a persistent download directory.
+     */
+    private static final String INDEX_FILE = "downloads.idx";
+
+    /**
+     * The checksum files a remote repository publishes beside its files, which are not checked themselves.
+     */
+    private static final List<String> CHECKSUM_EXTENSIONS = Arrays.asList(".sha1", ".md5", ".sha256", ".sha512");
+
+    /**
+     * How {@code file:} URLs are downloaded.
+     */
+    public enum LocalFileMode {
+        /**
+         * Through the Wagon for the {@code file} protocol, like any other URL. The default, and the only mode in
+         * which transfer listeners see the copy.
+         */
+        WAGON,
+
+        /**
+         * The source file itself is returned, without any copy. Callers must treat it as read-only, and
+         * {@link DefaultDownloadManager#cleanup()} leaves it alone.
+         */
+        DIRECT,
+
+        /**
+         * The source file is hard linked into the download directory, or copied where the file system cannot
+         * link to it. A link shares the content of the source, so this suits sources that are replaced rather
+         * than modified in place, such as staged artifacts.
+         */
+        COPY
+    }
+
+    /**
+     * State of the circuit breaker of a host.
+     */
+    public enum CircuitState {
+        /**
+         * Downloads go ahead.
+         */
+        CLOSED,
+
+        /**
+         * The host failed repeatedly, downloads fail at once until the cool-down is over.
+         */
+        OPEN,
+
+        /**
+         * The cool-down is over and one download probes the host. Others fail at once until it is done.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Urgency of an asynchronous download.
+     */
+    public enum Priority {
+        /**
+         * A download the build is blocked on, such as a descriptor.
+         */
+        CRITICAL,
+
+        /**
+         * The default.
+         */
+        NORMAL,
+
+        /**
+         * A download nothing waits for yet, such as a prefetch.
+         */
+        BACKGROUND
+    }
+
     private WagonManager wagonManager;
 
+    private LocalFileMode localFileMode = LocalFileMode.WAGON;
+
+    /**
+     * Minimum size of an HTTP download to split into {@link #segmentCount} ranges.
+     */
+    private long segmentThreshold = Long.MAX_VALUE;
+
+    /**
+     * Number of ranges of a large HTTP download fetched concurrently. One disables segmented downloads.
+     */
+    private int segmentCount = 1;
+
+    /**
+     * Local repository serving downloads from the {@link #remoteRepositories}, or {@code null}.
+     */
+    private ArtifactRepository localRepository;
+
+    private List<ArtifactRepository> remoteRepositories = Collections.emptyList();
+
+    private boolean populateLocalRepository;
+
+    private boolean preallocation;
+
+    private ProgressHub progressHub;
+
+    /**
+     * How long a download is used before it is revalidated, 0 for as long as its file exists.
+     */
+    private long maxAgeMillis;
+
+    /**
+     * When the cached downloads that can be revalidated were fetched, and their validators, by URL.
+     */
+    private final Map<String, DownloadIndex.Entry> validators = new ConcurrentHashMap<>();
+
+    /**
+     * Names the URLs to fetch in the background after a download, or {@code null} for no prefetching.
+     */
+    private PrefetchStrategy prefetchStrategy;
+
+    private int maxPrefetches;
+
+    /**
+     * How long prefetches go on without any download being requested, 0 for as long as they take.
+     */
+    private long prefetchIdleNanos;
+
+    /**
+     * When a download was last requested, for the prefetches to stop once callers went idle.
+     */
+    private volatile long lastDemandNanos = System.nanoTime();
+
+    /**
+     * Prefetches queued or in progress, by URL.
+     */
+    private final Map<String, Prefetch> prefetches = new ConcurrentHashMap<>();
+
+    private int asyncThreads = 4;
+
+    private long priorityAgingNanos = TimeUnit.SECONDS.toNanos(1);
+
+    private PriorityExecutor asyncExecutor;
+
+    /**
+     * Bytes of a download buffered for its extraction at most.
+     */
+    private int extractBufferSize = 1024 * 1024;
+
+    private int extractWriters = 1;
+
+    /**
+     * Largest content {@link #downloadToMemory(String, MessageHolder)} keeps in memory.
+     */
+    private int inMemoryThreshold = 64 * 1024;
+
+    private final MemoryCache memoryCache = new MemoryCache(4 * 1024 * 1024);
+
+    /**
+     * Limit each host starts with, 0 if downloads are not limited.
+     */
+    private int initialConcurrency;
+
+    private int maxConcurrency;
+
+    /**
+     * Adaptive concurrency limit per host and port.
+     */
+    private final Map<String, AdaptiveConcurrencyLimit> concurrencyLimits = new ConcurrentHashMap<>();
+
+    /**
+     * Failures in a row that open the circuit of a host, 0 if there are no circuit breakers.
+     */
+    private int circuitFailureThreshold;
+
+    private long circuitCoolDownNanos;
+
+    /**
+     * Circuit breaker per host and port.
+     */
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
     private Map<String, File> cache = new ConcurrentHashMap<>();
 
+    /**
+     * Upper bound of idle Wagons kept per protocol. More concurrent downloads than this still work,
+     * the surplus Wagons are just not kept once their download is done.
+     */
+    private static final int MAX_IDLE_WAGONS_PER_PROTOCOL = 8;
+
+    /**
+     * Idle Wagons per protocol, so a download does not look one up in the container each time. A
+     * Wagon holds connection state, so it is lent to one download at a time and only returned here
+     * once that download has disconnected it.
+     */
+    private final Map<String, Queue<Wagon>> idleWagons = new ConcurrentHashMap<>();
+
+    /**
+     * Authentication per repository id, as the {@link WagonManager} returned it. Repositories
+     * without credentials are remembered as empty, so they are not looked up again either.
+     */
+    private final Map<String, Optional<AuthenticationInfo>> authenticationInfos = new ConcurrentHashMap<>();
+
+    /**
+     * Proxy per protocol, as the {@link WagonManager} returned it. Empty if there is none.
+     */
+    private final Map<String, Optional<ProxyInfo>> proxies = new ConcurrentHashMap<>();
+
     /**
      * Shared parent of all download directories. One JVM shutdown hook deletes it.
      */
@@ -84,6 +320,17 @@ public class DefaultDownloadManager implements DownloadManager {
      */
     private File downloadDirectory;
 
+    /**
+     * Directory kept across JVMs, or {@code null} for downloads into {@link #downloadDirectory}.
+     */
+    private File persistentDirectory;
+
+    /**
+     * Index of the {@link #persistentDirectory}, or {@code null}. Set under the lock of this manager, and read
+     * without it by downloads caching their files.
+     */
+    private volatile DownloadIndex index;
+
     /**
      * Create an instance of the {@code DefaultDownloadManager}.
      *
@@ -101,34 +348,360 @@ public class DefaultDownloadManager implements DownloadManager {
         this.wagonManager = wagonManager;
     }
 
+    /**
+     * @param wagonManager {@link org.apache.maven.repository.legacy.WagonManager}
+     * @param persistentDirectory the directory to keep downloads in across JVMs.
+     * @throws IOException if the index of the directory cannot be read.
+     * @see #setPersistentDirectory(File)
+     */
+    public DefaultDownloadManager(WagonManager wagonManager, File persistentDirectory) throws IOException {
+        this.wagonManager = wagonManager;
+        setPersistentDirectory(persistentDirectory);
+    }
+
+    /**
+     * Keeps downloads in the given directory across JVMs, instead of in a temporary directory removed at JVM exit.
+     * The directory holds an index of the downloads in it, which is read here, so the downloads of earlier managers
+     * are cache hits right away. The directory is never removed, but {@link #cleanup()} empties it.
+     *
+     * @param directory the directory, created if needed, or {@code null} for temporary downloads, the default.
+     * @throws IOException if the index of the directory cannot be read.
+     */
+    public void setPersistentDirectory(File directory) throws IOException {
+        DownloadIndex newIndex = null;
+        Map<String, DownloadIndex.Entry> entries = Collections.emptyMap();
+
+        if (directory != null) {
+            newIndex = new DownloadIndex(new File(directory, INDEX_FILE).toPath());
+            entries = newIndex.load();
+        }
+
+        synchronized (this) {
+            persistentDirectory = directory;
+            downloadDirectory = directory;
+            index = newIndex;
+        }
+
+        cache.clear();
+        validators.clear();
+        entries.forEach((url, entry) -> {
+            cache.put(url, entry.getFile());
+            if (entry.getRemoteLastModified() >= 0) {
+                validators.put(url, entry);
+            }
+        });
+    }
+
+    /**
+     * @param localFileMode how to download {@code file:} URLs, {@link LocalFileMode#WAGON} by default.
+     */
+    public void setLocalFileMode(LocalFileMode localFileMode) {
+        this.localFileMode = (localFileMode != null) ? localFileMode : LocalFileMode.WAGON;
+    }
+
+    /**
+     * Lets large HTTP downloads be split into byte ranges that are fetched concurrently, for servers where a single
+     * connection cannot use the available bandwidth. Every HTTP download then starts with a {@code HEAD} request for
+     * the size of the resource; those below the threshold, and servers that do not serve ranges, use the Wagon.
+     *
+     * @param threshold minimum size in bytes of a download to split.
+     * @param segments number of ranges fetched concurrently, 1 to disable splitting, the default.
+     */
+    public void setSegmentedDownload(long threshold, int segments) {
+        this.segmentThreshold = threshold;
+        this.segmentCount = Math.max(1, segments);
+    }
+
+    /**
+     * Serves downloads of release files from remote Maven repositories out of the local repository, where they are
+     * already, instead of downloading them again. A URL under the URL of a remote repository names the file at the
+     * same path of the local repository. The file is returned as it is, so callers must treat it as read-only.
+     * Metadata and snapshots change in the remote repository and are always downloaded.
+     *
+     * @param localRepository the local repository, or {@code null} to serve nothing from it, the default.
+     * @param remoteRepositories the remote repositories the local repository mirrors.
+     * @param populate whether files downloaded on a miss are linked, or copied, into the local repository.
+     */
+    public void setRepositoryTier(
+            ArtifactRepository localRepository, List<ArtifactRepository> remoteRepositories, boolean populate) {
+        this.localRepository = localRepository;
+        this.remoteRepositories =
+                (remoteRepositories != null) ? new ArrayList<>(remoteRepositories) : Collections.emptyList();
+        this.populateLocalRepository = populate;
+    }
+
+    /**
+     * Sizes landing files to the content length before the download writes to them, and fails a download at once
+     * if the content length is known and the disk has less usable space, instead of after transferring most of it.
+     * The JDK offers no native allocation, so the landing file is extended like
+     * {@link RandomAccessFile#setLength(long)} does, which file systems with sparse files allocate lazily. Downloads
+     * through a {@link StreamingWagon} are written into the sized file. Any other Wagon recreates its target file,
+     * so its downloads are only checked against the usable space. Off by default.
+     *
+     * @param preallocation whether to check and size landing files.
+     */
+    public void setPreallocation(boolean preallocation) {
+        this.preallocation = preallocation;
+    }
+
+    /**
+     * Reports the progress of all downloads to one hub, in addition to the transfer listeners of each download.
+     *
+     * @param progressHub the hub, or {@code null} for none, the default.
+     */
+    public void setProgressHub(ProgressHub progressHub) {
+        this.progressHub = progressHub;
+    }
+
+    /**
+     * Configures {@link #downloadAndExtract(String, File, MessageHolder)}.
+     *
+     * @param bufferSize how many bytes of a download are buffered for its extraction at most. The download waits
+     *            while the extraction is that far behind. The default is 1 MiB.
+     * @param writers the threads writing small files, while the archive is read on. One, the default, writes every
+     *            file on the thread reading the archive.
+     */
+    public void setExtraction(int bufferSize, int writers) {
+        this.extractBufferSize = Math.max(1, bufferSize);
+        this.extractWriters = Math.max(1, writers);
+    }
+
+    /**
+     * Configures {@link #downloadAsync(String, Priority, MessageHolder)}. Downloads already queued keep running.
+     *
+     * @param threads the number of downloads running at the same time, 4 by default.
+     * @param aging how long a queued download waits at most before downloads of the next higher priority stop
+     *            overtaking it, 1 second by default. A {@link Priority#BACKGROUND} download waits at most twice that
+     *            behind {@link Priority#CRITICAL} ones.
+     * @param unit the unit of the aging.
+     */
+    public void setAsyncDownloads(int threads, long aging, TimeUnit unit) {
+        PriorityExecutor previous;
+        synchronized (this) {
+            asyncThreads = Math.max(1, threads);
+            priorityAgingNanos = unit.toNanos(aging);
+            previous = asyncExecutor;
+            asyncExecutor = null;
+        }
+
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * Revalidates a cached download once it is older than the given age, for URLs whose content changes. The
+     * download is fetched again only if the server reports a newer modification time, through
+     * {@link Wagon#getIfNewer(String, File, long)}, which HTTP Wagons send as {@code If-Modified-Since}; otherwise
+     * the cached file is used for another max age. Wagon exposes no entity tags, so a server without modification
+     * times has every stale download fetched again. Downloads served from the local repository or from local files
+     * are never revalidated.
+     *
+     * @param maxAge how long a download is used without revalidation, or 0 for as long as its file exists, the
+     *            default.
+     * @param unit the unit of the max age.
+     */
+    public void setMaxAge(long maxAge, TimeUnit unit) {
+        this.maxAgeMillis = Math.max(0, unit.toMillis(maxAge));
+    }
+
+    /**
+     * Fetches the URLs likely to be requested next in the background after each download, such as the checksum and
+     * POM of an artifact with {@link ArtifactPrefetchStrategy}, so their round trips overlap with the caller's work.
+     * Prefetches run as {@link Priority#BACKGROUND} {@link #downloadAsync(String, Priority, MessageHolder) asynchronous
+     * downloads}, reusing the pooled Wagons, and land in the cache. A download requested while its prefetch is in
+     * progress waits for it, unless it has a deadline or can be cancelled.
+     *
+     * @param strategy names the URLs to prefetch, or {@code null} to stop prefetching, the default.
+     * @param maxPrefetches how many prefetches may be queued or in progress at once. URLs beyond it are skipped.
+     * @param idleTimeout how long prefetches go on once no download was requested, or 0 for as long as they take.
+     *            Prefetches still queued or in progress after that are cancelled.
+     * @param unit the unit of the idle timeout.
+     */
+    public void setPrefetch(PrefetchStrategy strategy, int maxPrefetches, long idleTimeout, TimeUnit unit) {
+        this.prefetchStrategy = strategy;
+        this.maxPrefetches = Math.max(0, maxPrefetches);
+        this.prefetchIdleNanos = Math.max(0, unit.toNanos(idleTimeout));
+    }
+
+    /**
+     * Configures {@link #downloadToMemory(String, MessageHolder)}.
+     *
+     * @param threshold the largest content, in bytes, kept in memory. Larger content lands in a file, which is
+     *            mapped into memory instead. The default is 64 KiB.
+     * @param cacheCapacity how many bytes of content in memory are cached, least recently used evicted first. The
+     *            default is 4 MiB.
+     */
+    public void setInMemoryDownloads(int threshold, long cacheCapacity) {
+        this.inMemoryThreshold = Math.max(0, threshold);
+        memoryCache.setCapacity(cacheCapacity);
+    }
+
+    /**
+     * Limits the downloads running at the same time from each host, for bulk downloads from many threads. The limit
+     * of a host grows by about one per round of downloads that used it all, as long as the host starts sending as
+     * fast as before. It halves when a download fails to connect or transfer, and shrinks when the host slows down.
+     * Downloads over the limit wait for a permit.
+     *
+     * @param initialLimit the limit of a host not seen before, or 0 to not limit downloads, the default.
+     * @param maxLimit the limit never grows above.
+     */
+    public void setAdaptiveConcurrency(int initialLimit, int maxLimit) {
+        this.initialConcurrency = Math.max(0, initialLimit);
+        this.maxConcurrency = Math.max(initialLimit, maxLimit);
+        concurrencyLimits.clear();
+    }
+
+    /**
+     * @return the current concurrency limit per host, keyed by host and port, of the hosts downloaded from so far.
+     *         Empty unless {@link #setAdaptiveConcurrency(int, int)} enabled limits.
+     */
+    public Map<String, Integer> getConcurrencyLimits() {
+        Map<String, Integer> limits = new TreeMap<>();
+        concurrencyLimits.forEach((host, limit) -> limits.put(host, limit.getLimit()));
+
+        return limits;
+    }
+
+    /**
+     * Makes downloads from a host fail at once after it failed repeatedly, instead of each waiting for its own
+     * connect timeout. Failures are connections that could not be made and transfers that broke off; a host that
+     * answers, even with an error, counts as available. Once the cool-down is over, the next download probes the
+     * host and closes the circuit again if it succeeds. Circuit changes are reported to the {@link MessageHolder}
+     * as warnings.
+     *
+     * @param failureThreshold failures in a row that open the circuit of a host, or 0 for no circuit breakers, the
+     *            default.
+     * @param coolDown how long an open circuit makes downloads fail.
+     * @param unit the unit of the cool-down.
+     */
+    public void setCircuitBreaker(int failureThreshold, long coolDown, TimeUnit unit) {
+        this.circuitFailureThreshold = Math.max(0, failureThreshold);
+        this.circuitCoolDownNanos = unit.toNanos(coolDown);
+        circuitBreakers.clear();
+    }
+
+    /**
+     * @return the circuit state per host, keyed by host and port, of the hosts downloaded from so far. Empty unless
+     *         {@link #setCircuitBreaker(int, long, TimeUnit)} enabled circuit breakers.
+     */
+    public Map<String, CircuitState> getCircuitStates() {
+        Map<String, CircuitState> states = new TreeMap<>();
+        circuitBreakers.forEach((host, breaker) -> states.put(host, breaker.getState()));
+
+        return states;
+    }
+
     /**
      * Deletes the temporary files downloaded through this manager and empties its cache, so that
      * subsequent requests download again. Calling this is optional: the files are removed when the
      * JVM exits anyway. It is worth calling in a long-lived JVM, such as a Maven daemon or an
      * embedded build, once the downloaded files are no longer needed. Do not call it while a
      * download is in progress on another thread, as that download writes into the directory being
-     * removed.
+     * removed. With a {@link #setPersistentDirectory(File) persistent directory}, this empties the directory and
+     * its index instead.
      */
     public void cleanup() {
+        prefetches.values().forEach(prefetch -> prefetch.future.cancel(false));
         cache.clear();
+        validators.clear();
+        memoryCache.clear();
 
         File directory;
+        DownloadIndex persistentIndex;
         synchronized (this) {
             directory = downloadDirectory;
-            downloadDirectory = null;
+            persistentIndex = index;
+            if (persistentIndex == null) {
+                downloadDirectory = null;
+            }
         }
 
-        if (directory != null) {
+        if (persistentIndex != null) {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                Path lockFile = persistentIndex.getLockFile();
+                for (File file : files) {
+                    // Another process may hold the lock, which deleting its file would quietly break.
+                    if (!file.getName().equals(INDEX_FILE) && !file.toPath().equals(lockFile)) {
+                        FileUtils.deleteQuietly(file);
+                    }
+                }
+            }
+
+            try {
+                persistentIndex.clear();
+            } catch (IOException e) {
+                // Its records name deleted files, which are dropped when it is read.
+            }
+        } else if (directory != null) {
             FileUtils.deleteQuietly(directory);
         }
     }
 
+    /**
+     * Forgets the Wagons, authentication and proxies looked up so far, so that the next downloads
+     * look them up again from the {@link WagonManager}. Call this after the settings behind the
+     * {@link WagonManager} changed, such as servers, proxies or mirrors. Downloads already in
+     * progress keep what they started with.
+     */
+    public void invalidateSettings() {
+        idleWagons.clear();
+        authenticationInfos.clear();
+        proxies.clear();
+    }
+
+    /**
+     * @param protocol the protocol of the URL to download.
+     * @return an idle Wagon for the protocol, or a new one from the {@link WagonManager}, which may be {@code null}.
+     * @throws UnsupportedProtocolException if the {@link WagonManager} has no Wagon for the protocol.
+     */
+    private Wagon borrowWagon(String protocol) throws UnsupportedProtocolException {
+        Queue<Wagon> idle = idleWagons.get(protocol);
+        Wagon wagon = (idle != null) ? idle.poll() : null;
+
+        if (wagon == null) {
+            wagon = wagonManager.getWagon(protocol);
+        }
+
+        return wagon;
+    }
+
+    /**
+     * Keeps a disconnected Wagon for the next download of the same protocol, unless enough are idle already.
+     *
+     * @param protocol the protocol the Wagon was borrowed for.
+     * @param wagon the Wagon, disconnected and without listeners.
+     */
+    private void returnWagon(String protocol, Wagon wagon) {
+        idleWagons
+                .computeIfAbsent(protocol, p -> new LinkedBlockingQueue<>(MAX_IDLE_WAGONS_PER_PROTOCOL))
+                .offer(wagon);
+    }
+
+    private AuthenticationInfo getAuthenticationInfo(String repositoryId) {
+        return authenticationInfos
+                .computeIfAbsent(repositoryId, id -> Optional.ofNullable(wagonManager.getAuthenticationInfo(id)))
+                .orElse(null);
+    }
+
+    private ProxyInfo getProxy(String protocol) {
+        return proxies.computeIfAbsent(protocol, p -> Optional.ofNullable(wagonManager.getProxy(p)))
+                .orElse(null);
+    }
+
     /**
      * @return the directory of this manager, creating it, the shared root and the shutdown hook that
      *         removes the root on first use.
      * @throws IOException if the directory cannot be created.
      */
     private synchronized File downloadDirectory() throws IOException {
+        if (persistentDirectory != null) {
+            Files.createDirectories(persistentDirectory.toPath());
+
+            return persistentDirectory;
+        }
+
         if (downloadDirectory == null || !downloadDirectory.isDirectory()) {
             downloadDirectory = Files.createTempDirectory(downloadRoot().toPath(), "manager-")
                     .toFile();
@@ -224,50 +797,594 @@ public class DefaultDownloadManager implements DownloadManager {
     /** {@inheritDoc} */
     public File download(String url, List<TransferListener> transferListeners, MessageHolder messageHolder)
             throws DownloadFailedException {
-        File downloaded = cache.get(url);
-
-        if (downloaded != null && downloaded.exists()) {
-            messageHolder.addMessage("Using cached download: " + downloaded.getAbsolutePath());
+        return download(url, transferListeners, messageHolder, 0, TimeUnit.MILLISECONDS, null);
+    }
 
-            return downloaded;
+    /** {@inheritDoc} */
+    @Override
+    public File download(
+            String url,
+            List<TransferListener> transferListeners,
+            MessageHolder messageHolder,
+            long timeout,
+            TimeUnit unit,
+            CancellationToken cancellation)
+            throws DownloadFailedException {
+        PrefetchStrategy strategy = prefetchStrategy;
+        if (strategy == null) {
+            return fetch(url, transferListeners, messageHolder, timeout, unit, cancellation);
         }
 
-        URL sourceUrl;
-        try {
-            sourceUrl = new URL(url);
-        } catch (MalformedURLException e) {
-            throw new DownloadFailedException(url, "Download failed due to invalid URL.", e);
-        }
+        lastDemandNanos = System.nanoTime();
 
-        if (wagonManager == null) {
-            throw new DownloadFailedException(url, "WagonManager not set in DefaultDownloadManager.");
+        File downloaded = (timeout <= 0 && cancellation == null) ? awaitPrefetch(url, messageHolder) : null;
+        if (downloaded == null) {
+            downloaded = fetch(url, transferListeners, messageHolder, timeout, unit, cancellation);
         }
 
-        Wagon wagon = null;
+        prefetch(strategy, url);
 
-        // Retrieve the correct Wagon instance used to download the remote archive
-        try {
-            wagon = wagonManager.getWagon(sourceUrl.getProtocol());
-        } catch (UnsupportedProtocolException e) {
-            throw new DownloadFailedException(url, "Download failed", e);
-        }
+        return downloaded;
+    }
 
-        if (wagon == null) {
-            throw new DownloadFailedException(url, "No wagon available for protocol: " + sourceUrl.getProtocol());
+    /**
+     * Waits for the prefetch of a URL if it is already in progress. A prefetch still queued is taken over instead,
+     * as it may wait behind other background downloads for longer than the download takes.
+     *
+     * @return its file, or {@code null} if there is no prefetch in progress or it failed.
+     */
+    private File awaitPrefetch(String url, MessageHolder messageHolder) throws DownloadCancelledException {
+        Prefetch prefetch = prefetches.get(url);
+        if (prefetch == null) {
+            return null;
         }
 
-        messageHolder.addMessage("Using wagon: " + wagon + " to download: " + url);
+        if (prefetch.claim()) {
+            prefetch.future.cancel(false);
+            return null;
+        }
 
         try {
-            // create the landing file for the downloaded source archive, in the temp directory that
-            // is removed as a whole at JVM exit, so no per-file exit hook is needed.
-            downloaded = Files.createTempFile(downloadDirectory().toPath(), "download-", null)
-                    .toFile();
-        } catch (IOException e) {
-            throw new DownloadFailedException(url, "Failed to create temporary file target for download.", e);
+            File downloaded = prefetch.future.get();
+            messageHolder.addMessage("Using prefetched download: " + downloaded.getAbsolutePath());
+
+            return downloaded;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DownloadCancelledException(url, "Interrupted while waiting for the prefetch.");
+        } catch (ExecutionException | CancellationException e) {
+            // Download it again, so the caller gets the failure of its own attempt.
+            return null;
         }
+    }
 
-        messageHolder.addMessage("Download target is: " + downloaded.getAbsolutePath());
+    /**
+     * Queues the prefetches of the URLs related to the given one that are neither cached nor already queued, within
+     * the budget.
+     */
+    private void prefetch(PrefetchStrategy strategy, String url) {
+        for (String related : strategy.getRelatedUrls(url)) {
+            File cached = cache.get(related);
+            if (cached != null && cached.exists()) {
+                continue;
+            }
+
+            IdleCancellation cancellation = new IdleCancellation();
+            Prefetch prefetch = new Prefetch();
+            synchronized (prefetches) {
+                if (prefetches.size() >= maxPrefetches) {
+                    return;
+                }
+                if (prefetches.containsKey(related)) {
+                    continue;
+                }
+
+                prefetch.future = asyncExecutor()
+                        .submit(
+                                Priority.BACKGROUND.ordinal(),
+                                () -> prefetch.claim()
+                                        ? fetch(
+                                                related,
+                                                Collections.<TransferListener>emptyList(),
+                                                new DefaultMessageHolder(),
+                                                0,
+                                                TimeUnit.MILLISECONDS,
+                                                cancellation)
+                                        : null);
+                prefetches.put(related, prefetch);
+            }
+
+            prefetch.future.whenComplete((file, failure) -> {
+                prefetches.remove(related, prefetch);
+                if (prefetch.future.isCancelled()) {
+                    cancellation.cancel();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return how many prefetches are queued or running.
+     */
+    int pendingPrefetches() {
+        return prefetches.size();
+    }
+
+    /**
+     * A queued or running prefetch. Whoever claims it first runs it: the async pool once it dequeues it, or a
+     * download of the same URL that finds it still queued.
+     */
+    private static final class Prefetch {
+
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private volatile CompletableFuture<File> future;
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * Cancels a prefetch once no download was requested for the idle timeout, when it is checked before connecting
+     * and after every chunk transferred.
+     */
+    private final class IdleCancellation extends CancellationToken {
+
+        @Override
+        public boolean isCancelled() {
+            return super.isCancelled()
+                    || (prefetchIdleNanos > 0 && System.nanoTime() - lastDemandNanos > prefetchIdleNanos);
+        }
+    }
+
+    private File fetch(
+            String url,
+            List<TransferListener> transferListeners,
+            MessageHolder messageHolder,
+            long timeout,
+            TimeUnit unit,
+            CancellationToken cancellation)
+            throws DownloadFailedException {
+        File downloaded = cache.get(url);
+        DownloadIndex.Entry stale = null;
+
+        if (downloaded != null && downloaded.exists()) {
+            stale = staleEntry(url, downloaded);
+
+            if (stale == null) {
+                messageHolder.addMessage("Using cached download: " + downloaded.getAbsolutePath());
+
+                return downloaded;
+            }
+
+            messageHolder.addMessage("Revalidating cached download: " + downloaded.getAbsolutePath());
+        }
+
+        URL sourceUrl = toUrl(url);
+
+        Abort abort = new Abort(url, timeout, unit, cancellation);
+        abort.check();
+
+        File local = localRepositoryFile(url);
+
+        if (local != null && local.isFile()) {
+            messageHolder.addMessage("Using local repository file: " + local.getAbsolutePath());
+
+            return cacheDownload(url, local);
+        }
+
+        if (localFileMode != LocalFileMode.WAGON && isLocalFile(sourceUrl)) {
+            return downloadLocalFile(url, sourceUrl, messageHolder);
+        }
+
+        downloaded = transfer(url, sourceUrl, transferListeners, messageHolder, abort, null, stale);
+
+        if (local != null && populateLocalRepository && verifyChecksum(url, downloaded, messageHolder, abort)) {
+            populateLocalRepository(downloaded, local, messageHolder);
+        }
+
+        return downloaded;
+    }
+
+    /**
+     * Downloads on a thread of this manager, more urgent downloads first. A download that is already cached completes
+     * at once. Cancelling the future of a download keeps it from starting, or aborts it between chunks.
+     *
+     * @param url the URL to download.
+     * @param priority the urgency of the download.
+     * @param messageHolder receives messages about the download, from another thread, so it must not be shared with
+     *            other downloads.
+     * @return the future of the downloaded file.
+     * @see #setAsyncDownloads(int, long, TimeUnit)
+     */
+    public CompletableFuture<File> downloadAsync(String url, Priority priority, MessageHolder messageHolder) {
+        File cached = cache.get(url);
+
+        if (cached != null && cached.exists() && staleEntry(url, cached) == null) {
+            messageHolder.addMessage("Using cached download: " + cached.getAbsolutePath());
+
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CancellationToken cancellation = new CancellationToken();
+
+        CompletableFuture<File> future = asyncExecutor()
+                .submit(
+                        priority.ordinal(),
+                        () -> download(
+                                url,
+                                Collections.<TransferListener>emptyList(),
+                                messageHolder,
+                                0,
+                                TimeUnit.MILLISECONDS,
+                                cancellation));
+
+        future.whenComplete((file, failure) -> {
+            if (future.isCancelled()) {
+                cancellation.cancel();
+            }
+        });
+
+        return future;
+    }
+
+    private synchronized PriorityExecutor asyncExecutor() {
+        if (asyncExecutor == null) {
+            asyncExecutor = new PriorityExecutor(asyncThreads, priorityAgingNanos);
+        }
+
+        return asyncExecutor;
+    }
+
+    /**
+     * Downloads small content, such as a checksum or a descriptor, into memory without touching the disk, and caches
+     * it in memory, for the {@link #setMaxAge(long, TimeUnit) max age} if one is set. This needs a
+     * {@link StreamingWagon} for the protocol. Content over the threshold set by
+     * {@link #setInMemoryDownloads(int, long)} spills into a file as it goes on downloading, and content that a Wagon
+     * can only download into a file lands in a file like with {@link #download(String, MessageHolder)}; either file
+     * is then mapped into memory.
+     *
+     * @param url the URL to download.
+     * @param messageHolder receives messages about the download.
+     * @return the content, as a read-only buffer of its own, positioned at the start.
+     * @throws DownloadFailedException if the download fails.
+     */
+    public ByteBuffer downloadToMemory(String url, MessageHolder messageHolder) throws DownloadFailedException {
+        ByteBuffer content = memoryCache.get(url, TimeUnit.MILLISECONDS.toNanos(maxAgeMillis));
+
+        if (content != null) {
+            messageHolder.addMessage("Using cached download of: " + url);
+
+            return content;
+        }
+
+        URL sourceUrl = toUrl(url);
+        File downloaded = findAvailable(url, sourceUrl, messageHolder);
+
+        if (downloaded == null) {
+            Abort abort = new Abort(url, 0, TimeUnit.MILLISECONDS, null);
+            MemoryLanding memory = new MemoryLanding(inMemoryThreshold);
+
+            boolean spillKept = false;
+            try {
+                downloaded = transfer(
+                        url, sourceUrl, Collections.<TransferListener>emptyList(), messageHolder, abort, memory, null);
+
+                if (downloaded == null) {
+                    File spilled = memory.finish();
+
+                    if (spilled == null) {
+                        content = memory.toBuffer();
+                        memoryCache.put(url, content);
+
+                        return content.duplicate();
+                    }
+
+                    messageHolder.addMessage("Content of " + url + " is larger than " + inMemoryThreshold
+                            + " bytes, downloaded it to: " + spilled.getAbsolutePath());
+
+                    downloaded = cacheDownload(url, spilled);
+                    spillKept = downloaded == spilled;
+                }
+            } catch (IOException e) {
+                throw new DownloadFailedException(url, "Failed to write the download to a file.", e);
+            } finally {
+                if (!spillKept) {
+                    memory.discard();
+                }
+            }
+        }
+
+        return map(url, downloaded);
+    }
+
+    /**
+     * Downloads a zip, jar, tar or gzipped tar archive and extracts it into a directory while it downloads, so the
+     * archive is never stored. The format follows the extension of the URL. This needs a {@link StreamingWagon} for
+     * the protocol; the downloads of other Wagons, and archives that are available as files already, are extracted
+     * from their file. Entries whose path would leave the directory fail the extraction, and links in tar archives
+     * are skipped. A failed extraction can leave part of the archive in the directory.
+     *
+     * @param url the URL of the archive.
+     * @param directory the directory to extract into, created if needed.
+     * @param messageHolder receives messages about the download.
+     * @return the number of files extracted.
+     * @throws DownloadFailedException if the download or the extraction fails.
+     * @see #setExtraction(int, int)
+     */
+    public int downloadAndExtract(String url, File directory, MessageHolder messageHolder)
+            throws DownloadFailedException {
+        URL sourceUrl = toUrl(url);
+
+        ArchiveExtractor.Format format = ArchiveExtractor.Format.of(sourceUrl.getPath());
+        if (format == null) {
+            throw new DownloadFailedException(url, "Cannot extract download, not a zip, jar, tar or tar.gz archive.");
+        }
+
+        ArchiveExtractor extractor = new ArchiveExtractor(directory.toPath(), extractWriters);
+
+        File downloaded = findAvailable(url, sourceUrl, messageHolder);
+
+        if (downloaded == null) {
+            Abort abort = new Abort(url, 0, TimeUnit.MILLISECONDS, null);
+            PipeLanding pipe = new PipeLanding(extractor, format, extractBufferSize);
+
+            try {
+                downloaded = transfer(
+                        url, sourceUrl, Collections.<TransferListener>emptyList(), messageHolder, abort, pipe, null);
+            } catch (DownloadFailedException e) {
+                // Asked first, as ending the input of an extraction halfway through fails it too.
+                boolean extractionFailed = pipe.isLocalFailure();
+                IOException extractionFailure = pipe.abandon();
+                if (extractionFailed && extractionFailure != null) {
+                    throw new DownloadFailedException(url, "Failed to extract download.", extractionFailure);
+                }
+                throw e;
+            }
+
+            if (downloaded == null) {
+                try {
+                    int files = pipe.finish();
+
+                    messageHolder.addMessage("Extracted " + files + " files while downloading to: " + directory);
+
+                    return files;
+                } catch (IOException e) {
+                    throw new DownloadFailedException(url, "Failed to extract download.", e);
+                }
+            }
+        }
+
+        try (InputStream in = Files.newInputStream(downloaded.toPath())) {
+            int files = extractor.extract(in, format);
+
+            messageHolder.addMessage("Extracted " + files + " files from: " + downloaded + " to: " + directory);
+
+            return files;
+        } catch (IOException e) {
+            throw new DownloadFailedException(url, "Failed to extract download.", e);
+        }
+    }
+
+    /**
+     * @return the file of a URL that needs no transfer: downloaded already, in the local repository or, as configured
+     *         by {@link #setLocalFileMode(LocalFileMode)}, a local file. {@code null} if it has to be transferred.
+     */
+    private File findAvailable(String url, URL sourceUrl, MessageHolder messageHolder)
+            throws DownloadFailedException {
+        File downloaded = cache.get(url);
+
+        if (downloaded == null || !downloaded.exists() || staleEntry(url, downloaded) != null) {
+            downloaded = localRepositoryFile(url);
+        }
+
+        if (downloaded != null && downloaded.isFile()) {
+            return downloaded;
+        }
+
+        if (localFileMode != LocalFileMode.WAGON && isLocalFile(sourceUrl)) {
+            return downloadLocalFile(url, sourceUrl, messageHolder);
+        }
+
+        return null;
+    }
+
+    private static ByteBuffer map(String url, File file) throws DownloadFailedException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new DownloadFailedException(url, "Download is too large for a buffer: " + file);
+            }
+
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new DownloadFailedException(url, "Failed to map download into memory: " + file, e);
+        }
+    }
+
+    /**
+     * @param url the URL to download.
+     * @return the file of the local repository at the path of the URL under a remote repository, whether it exists
+     *         or not, or {@code null} if the URL is not that of a release file in one of them.
+     */
+    private File localRepositoryFile(String url) {
+        if (localRepository == null || url.indexOf('?') >= 0 || url.indexOf('#') >= 0 || url.indexOf('%') >= 0) {
+            return null;
+        }
+
+        for (ArtifactRepository remote : remoteRepositories) {
+            String base = remote.getUrl();
+            if (base == null) {
+                continue;
+            }
+            if (!base.endsWith("/")) {
+                base += "/";
+            }
+
+            if (url.startsWith(base)) {
+                String path = url.substring(base.length());
+
+                return isReleasePath(path) ? new File(localRepository.getBasedir(), path) : null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param path a path in a repository.
+     * @return whether the path names a file of a release, {@code groupId/artifactId/version/file} with the group
+     *         id in any number of segments, which never changes once deployed.
+     */
+    private static boolean isReleasePath(String path) {
+        String[] segments = path.split("/", -1);
+
+        if (segments.length < 4) {
+            return false;
+        }
+
+        for (String segment : segments) {
+            if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+                return false;
+            }
+        }
+
+        String version = segments[segments.length - 2];
+        String name = segments[segments.length - 1];
+
+        return !version.endsWith("-SNAPSHOT") && !name.startsWith("maven-metadata");
+    }
+
+    /**
+     * Checks a download against the SHA-1 the remote repository publishes beside it, before it goes into the local
+     * repository where every build trusts it. A checksum file has none of its own, and a file without one cannot be
+     * checked, so neither goes in. Fetching the checksum within the deadline left also caches it for the caller, who
+     * is likely to ask for it next.
+     *
+     * @return whether the download matches its checksum.
+     */
+    private boolean verifyChecksum(String url, File downloaded, MessageHolder messageHolder, Abort abort) {
+        String name = url.substring(url.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+        for (String extension : CHECKSUM_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return false;
+            }
+        }
+
+        String expected;
+        String actual;
+        try {
+            File checksum = fetch(
+                    url + ".sha1",
+                    Collections.<TransferListener>emptyList(),
+                    messageHolder,
+                    abort.hasDeadline() ? abort.remainingMillis(0) : 0,
+                    TimeUnit.MILLISECONDS,
+                    abort.cancellation);
+
+            String content = new String(Files.readAllBytes(checksum.toPath()), StandardCharsets.US_ASCII).trim();
+            // Some repositories append the file name after the checksum.
+            expected = content.split("\\s+", 2)[0];
+            actual = sha1(downloaded);
+        } catch (DownloadFailedException | IOException e) {
+            messageHolder.addWarningMessage(
+                    "Not adding download to local repository without its checksum: " + url, e);
+            return false;
+        }
+
+        if (!expected.equalsIgnoreCase(actual)) {
+            messageHolder.addWarningMessage("Not adding download to local repository, as its SHA-1 " + actual
+                    + " does not match the checksum " + expected + ": " + url);
+            return false;
+        }
+
+        return true;
+    }
+
+    private static String sha1(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                digest.update(buffer, 0, n);
+            }
+        }
+
+        StringBuilder hex = new StringBuilder(40);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * Links, or copies, a downloaded file into the local repository, unless something else put it there first.
+     * A failure only costs the next download, so it is reported but does not fail this one.
+     */
+    private static void populateLocalRepository(File downloaded, File local, MessageHolder messageHolder) {
+        Path target = local.toPath();
+
+        try {
+            Files.createDirectories(target.getParent());
+
+            try {
+                Files.createLink(target, downloaded.toPath());
+            } catch (FileAlreadyExistsException e) {
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                // Another file system, or one without hard links. Copy beside the target and move it in, so a
+                // concurrent build never sees a partial file.
+                Path copy = Files.createTempFile(target.getParent(), target.getFileName() + ".", ".part");
+                try {
+                    Files.copy(downloaded.toPath(), copy, StandardCopyOption.REPLACE_EXISTING);
+                    Files.move(copy, target, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(copy);
+                }
+            }
+
+            messageHolder.addMessage("Added download to local repository: " + local.getAbsolutePath());
+        } catch (IOException e) {
+            messageHolder.addWarningMessage(
+                    "Failed to add download to local repository: " + local.getAbsolutePath(), e);
+        }
+    }
+
+    private static URL toUrl(String url) throws DownloadFailedException {
+        try {
+            return new URL(url);
+        } catch (MalformedURLException e) {
+            throw new DownloadFailedException(url, "Download failed due to invalid URL.", e);
+        }
+    }
+
+    /**
+     * Downloads through a Wagon, into a new landing file or, if the Wagon can stream, into a stream.
+     *
+     * @param landing the stream to download to instead of a file, or {@code null}.
+     * @param stale the cached download to revalidate, or {@code null} to download unconditionally.
+     * @return the downloaded file, the file of {@code stale} if it is up to date, or {@code null} if it was
+     *         downloaded into the stream.
+     */
+    private File transfer(
+            String url,
+            URL sourceUrl,
+            List<TransferListener> transferListeners,
+            MessageHolder messageHolder,
+            Abort abort,
+            StreamLanding landing,
+            DownloadIndex.Entry stale)
+            throws DownloadFailedException {
+        if (wagonManager == null) {
+            throw new DownloadFailedException(url, "WagonManager not set in DefaultDownloadManager.");
+        }
 
         // split the download URL into base URL and remote path for connecting, then retrieving.
         String remotePath = sourceUrl.getPath();
@@ -284,81 +1401,1200 @@ public class DefaultDownloadManager implements DownloadManager {
         // Authority is copied verbatim so port and bracketed IPv6 host survive.
         String baseUrl = sourceUrl.getProtocol() + ":" + (authority != null ? "//" + authority : "");
 
-        for (Iterator<TransferListener> it = transferListeners.iterator(); it.hasNext(); ) {
-            wagon.addTransferListener(it.next());
-        }
+        RemoteLastModified remoteLastModified = (maxAgeMillis > 0) ? new RemoteLastModified() : null;
 
-        // connect to the remote site, and retrieve the archive. Note the separate methods in which
-        // base URL and remote path are used.
-        Repository repo = new Repository(sourceUrl.getHost(), baseUrl);
+        // The breaker first, so a download that fails fast holds neither a permit nor a Wagon nor a landing file.
+        try (HostProbe probe = probeHost(url, sourceUrl, messageHolder);
+                Permit permit = acquirePermit(sourceUrl, abort);
+                WagonLease lease = leaseWagon(url, sourceUrl, messageHolder);
+                LandingFile landingFile = (landing != null && lease.wagon instanceof StreamingWagon)
+                        ? null
+                        : newLandingFile(url, messageHolder)) {
+            Wagon wagon = lease.wagon;
+            File downloaded = (landingFile != null) ? landingFile.file : null;
 
-        messageHolder.addMessage("Connecting to: " + repo.getHost() + "(baseUrl: " + repo.getUrl() + ")");
+            if (landingFile == null) {
+                messageHolder.addMessage("Download target is a stream.");
+            }
 
-        boolean retainTempFile = false;
-        boolean connected = false;
-        try {
-            wagon.connect(
-                    repo,
-                    wagonManager.getAuthenticationInfo(repo.getId()),
-                    wagonManager.getProxy(sourceUrl.getProtocol()));
-            connected = true;
+            Preallocation preallocated = null;
+            if (preallocation && downloaded != null) {
+                preallocated = new Preallocation(url, downloaded, wagon instanceof StreamingWagon);
+            }
 
-            messageHolder.addMessage("Getting: " + remotePath);
+            List<TransferListener> listeners = listeners(
+                    transferListeners, sourceUrl, abort, permit.firstByte, preallocated, remoteLastModified);
+            lease.listen(listeners);
 
-            wagon.get(remotePath, downloaded);
+            // connect to the remote site, and retrieve the archive. Note the separate methods in which
+            // base URL and remote path are used.
+            Repository repo = new Repository(sourceUrl.getHost(), baseUrl);
 
-            // cache this for later download requests to the same instance...
-            File cached = cache.putIfAbsent(url, downloaded);
+            messageHolder.addMessage("Connecting to: " + repo.getHost() + "(baseUrl: " + repo.getUrl() + ")");
 
-            if (cached != null && cached.exists()) {
-                // Another thread cached this URL first. Return its file, which callers may already
-                // be using, and let the finally block delete this copy.
-                return cached;
-            }
+            permit.contacted();
 
-            if (cached != null) {
-                // The cached file is gone, so replace the entry with this one. Losing this race is
-                // harmless: either file is valid and both are deleted with the temp directory.
-                cache.replace(url, cached, downloaded);
+            if (abort.hasDeadline()) {
+                lease.shortenTimeouts(abort);
             }
 
-            retainTempFile = true;
-            return downloaded;
-        } catch (ConnectionException e) {
-            throw new DownloadFailedException(url, "Download failed", e);
-        } catch (AuthenticationException e) {
-            throw new DownloadFailedException(url, "Download failed", e);
-        } catch (TransferFailedException e) {
-            throw new DownloadFailedException(url, "Download failed", e);
-        } catch (ResourceDoesNotExistException e) {
-            throw new DownloadFailedException(url, "Download failed", e);
-        } catch (AuthorizationException e) {
-            throw new DownloadFailedException(url, "Download failed", e);
-        } finally {
-            // Delete the temp file unless the cache now holds it. Covers a failed download and a
-            // lost race to cache the same URL.
-            if (!retainTempFile) {
-                downloaded.delete();
-            }
+            try {
+                if (landingFile != null
+                        && stale == null
+                        && segmentCount > 1
+                        && downloadSegmented(sourceUrl, repo, wagon, downloaded, listeners, messageHolder)) {
+                    probe.answered();
 
-            if (wagon != null) {
-                // Only disconnect if the connection was actually established.
-                if (connected) {
-                    try {
-                        messageHolder.addMessage("Disconnecting.");
+                    return landingFile.keep(
+                            cacheDownload(url, downloaded, validated(url, downloaded, remoteLastModified)));
+                }
+
+                abort.check();
+
+                lease.connect(repo);
+
+                abort.check();
+
+                messageHolder.addMessage("Getting: " + remotePath);
+
+                if (landingFile == null) {
+                    ((StreamingWagon) wagon).getToStream(remotePath, landing);
+                    probe.answered();
+
+                    return null;
+                }
+
+                if (stale != null) {
+                    if (!wagon.getIfNewer(remotePath, downloaded, stale.getRemoteLastModified())) {
+                        probe.answered();
+                        messageHolder.addMessage("Cached download is up to date: " + stale.getFile());
 
-                        wagon.disconnect();
-                    } catch (ConnectionException e) {
-                        messageHolder.addMessage("Failed to disconnect wagon for: " + url, e);
+                        return confirm(stale);
                     }
+                } else if (preallocated != null && preallocated.isStreamed()) {
+                    try (OutputStream sized = preallocated.open()) {
+                        ((StreamingWagon) wagon).getToStream(remotePath, sized);
+                    }
+                } else {
+                    wagon.get(remotePath, downloaded);
+                }
+                probe.answered();
+
+                // cache this for later download requests to the same instance. If another thread cached
+                // this URL first, return its file and let the landing file be deleted.
+                return landingFile.keep(cacheDownload(url, downloaded, validated(url, downloaded, remoteLastModified)));
+            } catch (Aborted e) {
+                // The Wagon reports no error for a failure thrown by a listener, so the listeners that track
+                // the download, such as the one of the progress hub, would count it as running forever.
+                TransferEvent error =
+                        new TransferEvent(wagon, new Resource(remotePath), e.getCause(), TransferEvent.REQUEST_GET);
+                for (TransferListener listener : listeners) {
+                    listener.transferError(error);
                 }
 
-                // Listeners are added before connecting, so remove them even if connecting failed.
-                // Otherwise they stay attached to a Wagon that may be reused.
-                for (Iterator<TransferListener> it = transferListeners.iterator(); it.hasNext(); ) {
-                    wagon.removeTransferListener(it.next());
+                throw e.getCause();
+            } catch (AuthenticationException | AuthorizationException | ResourceDoesNotExistException e) {
+                probe.answered();
+                throw abort.failure(e);
+            } catch (ConnectionException | TransferFailedException | IOException e) {
+                if (isHostFailure(abort, landing)) {
+                    probe.failed();
+                    permit.failed();
                 }
+                throw abort.failure(e);
             }
         }
     }
+
+    /**
+     * Asks the circuit breaker of the host whether the download may go ahead, if downloads fail fast.
+     *
+     * @throws DownloadFailedException if the host failed repeatedly and is cooling down.
+     */
+    private HostProbe probeHost(String url, URL sourceUrl, MessageHolder messageHolder)
+            throws DownloadFailedException {
+        if (circuitFailureThreshold <= 0 || sourceUrl.getHost().isEmpty()) {
+            return new HostProbe(null, null, messageHolder);
+        }
+
+        String host = hostKey(sourceUrl);
+        CircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(
+                host, key -> new CircuitBreaker(circuitFailureThreshold, circuitCoolDownNanos));
+
+        if (!circuitBreaker.allow()) {
+            String message = "Download failed fast, " + host + " failed repeatedly. Retrying in "
+                    + TimeUnit.NANOSECONDS.toSeconds(circuitBreaker.remainingCoolDownNanos()) + "s at the earliest.";
+            messageHolder.addWarningMessage(message);
+
+            throw new DownloadFailedException(url, message);
+        }
+
+        return new HostProbe(circuitBreaker, host, messageHolder);
+    }
+
+    /**
+     * A download the circuit breaker of its host let through, or one from a host without a breaker. Closing it tells
+     * the breaker whether the host answered, failed, or neither, such as when the download was cancelled.
+     */
+    private final class HostProbe implements AutoCloseable {
+
+        private final CircuitBreaker circuitBreaker;
+
+        private final String host;
+
+        private final MessageHolder messageHolder;
+
+        private boolean answered;
+
+        private boolean failed;
+
+        HostProbe(CircuitBreaker circuitBreaker, String host, MessageHolder messageHolder) {
+            this.circuitBreaker = circuitBreaker;
+            this.host = host;
+            this.messageHolder = messageHolder;
+        }
+
+        /**
+         * The host answered, whether or not it had the resource.
+         */
+        void answered() {
+            answered = true;
+        }
+
+        /**
+         * The host could not be connected to, or the transfer broke off.
+         */
+        void failed() {
+            failed = true;
+        }
+
+        @Override
+        public void close() {
+            if (circuitBreaker == null) {
+                return;
+            }
+
+            if (failed) {
+                if (circuitBreaker.onFailure()) {
+                    messageHolder.addWarningMessage("Download from " + host
+                            + " failed repeatedly, failing further downloads from it fast for "
+                            + TimeUnit.NANOSECONDS.toSeconds(circuitCoolDownNanos) + "s.");
+                }
+            } else if (answered) {
+                circuitBreaker.onSuccess();
+            } else {
+                circuitBreaker.onAbandoned();
+            }
+        }
+    }
+
+    /**
+     * @return the listeners of a transfer: the given ones, after those of this manager that apply. The abort comes
+     *         first, so the given listeners see no chunk after the download was aborted.
+     */
+    private List<TransferListener> listeners(
+            List<TransferListener> transferListeners,
+            URL sourceUrl,
+            Abort abort,
+            FirstByteTimer firstByte,
+            Preallocation preallocated,
+            RemoteLastModified remoteLastModified) {
+        if (!abort.isActive()
+                && firstByte == null
+                && preallocated == null
+                && progressHub == null
+                && remoteLastModified == null) {
+            return transferListeners;
+        }
+
+        List<TransferListener> listeners = new ArrayList<>(transferListeners.size() + 5);
+        if (abort.isActive()) {
+            listeners.add(abort);
+        }
+        if (firstByte != null) {
+            listeners.add(firstByte);
+        }
+        if (preallocated != null) {
+            listeners.add(preallocated);
+        }
+        if (remoteLastModified != null) {
+            listeners.add(remoteLastModified);
+        }
+        if (progressHub != null) {
+            listeners.add(progressHub.newListener(
+                    sourceUrl.getHost().isEmpty() ? sourceUrl.getProtocol() : hostKey(sourceUrl)));
+        }
+        listeners.addAll(transferListeners);
+
+        return listeners;
+    }
+
+    /**
+     * Waits for a permit of the concurrency limit of the host, if downloads are limited.
+     */
+    private Permit acquirePermit(URL sourceUrl, Abort abort) throws DownloadFailedException {
+        if (initialConcurrency <= 0 || sourceUrl.getHost().isEmpty()) {
+            return new Permit(null, abort);
+        }
+
+        AdaptiveConcurrencyLimit concurrencyLimit = concurrencyLimits.computeIfAbsent(
+                hostKey(sourceUrl), host -> new AdaptiveConcurrencyLimit(initialConcurrency, maxConcurrency));
+        acquire(concurrencyLimit, abort);
+
+        return new Permit(concurrencyLimit, abort);
+    }
+
+    /**
+     * A permit of the concurrency limit of a host, or none if downloads are not limited. Closing it releases it with
+     * the latency of the host, or abandons it if the download tells nothing about the host.
+     */
+    private static final class Permit implements AutoCloseable {
+
+        private final AdaptiveConcurrencyLimit concurrencyLimit;
+
+        private final Abort abort;
+
+        /**
+         * Times the first byte, to be attached to the transfer, or {@code null} without a limit.
+         */
+        private final FirstByteTimer firstByte;
+
+        private long contactedAt;
+
+        private boolean failed;
+
+        Permit(AdaptiveConcurrencyLimit concurrencyLimit, Abort abort) {
+            this.concurrencyLimit = concurrencyLimit;
+            this.abort = abort;
+            this.firstByte = (concurrencyLimit != null) ? new FirstByteTimer() : null;
+        }
+
+        /**
+         * The host is about to be asked, so its latency counts from now.
+         */
+        void contacted() {
+            contactedAt = System.nanoTime();
+        }
+
+        /**
+         * The host failed the download.
+         */
+        void failed() {
+            failed = true;
+        }
+
+        @Override
+        public void close() {
+            if (concurrencyLimit == null) {
+                return;
+            }
+
+            if (firstByte.startedAt == 0 && (contactedAt == 0 || abort.isAborted() || abort.isExpired())) {
+                // Ended before the host was asked, or by the caller before the host answered, which tells
+                // nothing about the host.
+                concurrencyLimit.abandon();
+            } else {
+                long firstByteAt = (firstByte.startedAt != 0) ? firstByte.startedAt : System.nanoTime();
+                concurrencyLimit.release(firstByteAt - contactedAt, failed);
+            }
+        }
+    }
+
+    /**
+     * Borrows the Wagon of the protocol of the URL.
+     */
+    private WagonLease leaseWagon(String url, URL sourceUrl, MessageHolder messageHolder)
+            throws DownloadFailedException {
+        // Retrieve the correct Wagon instance used to download the remote archive
+        Wagon wagon;
+        try {
+            wagon = borrowWagon(sourceUrl.getProtocol());
+        } catch (UnsupportedProtocolException e) {
+            throw new DownloadFailedException(url, "Download failed", e);
+        }
+
+        if (wagon == null) {
+            throw new DownloadFailedException(url, "No wagon available for protocol: " + sourceUrl.getProtocol());
+        }
+
+        messageHolder.addMessage("Using wagon: " + wagon + " to download: " + url);
+
+        return new WagonLease(url, sourceUrl.getProtocol(), wagon, messageHolder);
+    }
+
+    /**
+     * A Wagon borrowed for one download. Closing it undoes what the download did to the Wagon, and returns it for
+     * the next download of the protocol unless its connection state is unknown.
+     */
+    private final class WagonLease implements AutoCloseable {
+
+        private final String url;
+
+        private final String protocol;
+
+        private final Wagon wagon;
+
+        private final MessageHolder messageHolder;
+
+        private List<TransferListener> listeners = Collections.emptyList();
+
+        private boolean timeoutsShortened;
+
+        private int connectTimeout;
+
+        private int readTimeout;
+
+        private boolean connected;
+
+        WagonLease(String url, String protocol, Wagon wagon, MessageHolder messageHolder) {
+            this.url = url;
+            this.protocol = protocol;
+            this.wagon = wagon;
+            this.messageHolder = messageHolder;
+        }
+
+        void listen(List<TransferListener> transferListeners) {
+            listeners = transferListeners;
+
+            for (TransferListener listener : listeners) {
+                wagon.addTransferListener(listener);
+            }
+        }
+
+        /**
+         * A hung server blocks in connect or read, where no listener is called, so let the Wagon time out when the
+         * deadline passes.
+         */
+        void shortenTimeouts(Abort abort) {
+            connectTimeout = wagon.getTimeout();
+            readTimeout = wagon.getReadTimeout();
+
+            wagon.setTimeout(abort.remainingMillis(connectTimeout));
+            wagon.setReadTimeout(abort.remainingMillis(readTimeout));
+            timeoutsShortened = true;
+        }
+
+        void connect(Repository repo) throws ConnectionException, AuthenticationException {
+            wagon.connect(repo, getAuthenticationInfo(repo.getId()), getProxy(protocol));
+            connected = true;
+        }
+
+        @Override
+        public void close() {
+            boolean reusable = true;
+
+            if (timeoutsShortened) {
+                wagon.setTimeout(connectTimeout);
+                wagon.setReadTimeout(readTimeout);
+            }
+
+            // Only disconnect if the connection was actually established.
+            if (connected) {
+                try {
+                    messageHolder.addMessage("Disconnecting.");
+
+                    wagon.disconnect();
+                } catch (ConnectionException e) {
+                    // Its connection state is unknown now, so do not hand it to another download.
+                    reusable = false;
+
+                    messageHolder.addMessage("Failed to disconnect wagon for: " + url, e);
+                }
+            }
+
+            // Listeners are added before connecting, so remove them even if connecting failed.
+            // Otherwise they stay attached to a Wagon that may be reused.
+            for (TransferListener listener : listeners) {
+                wagon.removeTransferListener(listener);
+            }
+
+            if (reusable) {
+                returnWagon(protocol, wagon);
+            }
+        }
+    }
+
+    /**
+     * Creates the landing file of a download, in the download directory.
+     */
+    private LandingFile newLandingFile(String url, MessageHolder messageHolder) throws DownloadFailedException {
+        File downloaded;
+        try {
+            // create the landing file for the downloaded source archive, in the temp directory that
+            // is removed as a whole at JVM exit, so no per-file exit hook is needed.
+            downloaded = Files.createTempFile(downloadDirectory().toPath(), "download-", null)
+                    .toFile();
+        } catch (IOException e) {
+            throw new DownloadFailedException(url, "Failed to create temporary file target for download.", e);
+        }
+
+        messageHolder.addMessage("Download target is: " + downloaded.getAbsolutePath());
+
+        return new LandingFile(downloaded);
+    }
+
+    /**
+     * The file a download lands in. Closing it deletes it unless the cache took it, which covers a failed download
+     * and a lost race to cache the same URL.
+     */
+    private static final class LandingFile implements AutoCloseable {
+
+        private final File file;
+
+        private boolean kept;
+
+        LandingFile(File file) {
+            this.file = file;
+        }
+
+        /**
+         * @param cached the file the cache hands out for the URL.
+         * @return the file.
+         */
+        File keep(File cached) {
+            kept = cached == file;
+
+            return cached;
+        }
+
+        @Override
+        public void close() {
+            if (!kept) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * The deadline and cancellation of one download. Attached as the first transfer listener, it aborts the transfer
+     * from the progress callback, the one place a Wagon calls back between chunks.
+     */
+    private static final class Abort extends AbstractTransferListener {
+
+        private final String url;
+
+        private final boolean hasDeadline;
+
+        private final long deadline;
+
+        private final CancellationToken cancellation;
+
+        /**
+         * Why the transfer was aborted, once it was. A Wagon may wrap the exception thrown from the listener into
+         * one of its own, and this tells such a failure apart from a real one.
+         */
+        private volatile DownloadCancelledException aborted;
+
+        Abort(String url, long timeout, TimeUnit unit, CancellationToken cancellation) {
+            this.url = url;
+            this.hasDeadline = timeout > 0;
+            this.deadline = hasDeadline ? System.nanoTime() + unit.toNanos(timeout) : 0;
+            this.cancellation = cancellation;
+        }
+
+        boolean isActive() {
+            return hasDeadline || cancellation != null;
+        }
+
+        boolean hasDeadline() {
+            return hasDeadline;
+        }
+
+        /**
+         * @return whether the transfer was aborted from the progress callback.
+         */
+        boolean isAborted() {
+            return aborted != null;
+        }
+
+        /**
+         * @return whether the deadline passed, which may have failed the transfer through a shortened Wagon timeout.
+         */
+        boolean isExpired() {
+            return hasDeadline && System.nanoTime() - deadline >= 0;
+        }
+
+        void check() throws DownloadCancelledException {
+            if (cancellation != null && cancellation.isCancelled()) {
+                throw new DownloadCancelledException(url, "Download cancelled.");
+            }
+
+            if (isExpired()) {
+                throw new DownloadCancelledException(url, "Download did not finish before its deadline.");
+            }
+        }
+
+        /**
+         * @param timeout a Wagon timeout in milliseconds, 0 for none.
+         * @return the timeout, shortened to the time left until the deadline, and at least 1.
+         */
+        int remainingMillis(int timeout) {
+            long remaining = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+
+            return (int) ((timeout > 0) ? Math.min(timeout, remaining) : Math.min(Integer.MAX_VALUE, remaining));
+        }
+
+        /**
+         * @param error why the download failed.
+         * @return the exception to throw for it: the cancellation if the transfer was aborted.
+         */
+        DownloadFailedException failure(Exception error) {
+            if (aborted != null) {
+                return aborted;
+            }
+
+            return new DownloadFailedException(url, "Download failed", error);
+        }
+
+        @Override
+        public void transferProgress(TransferEvent transferEvent, byte[] buffer, int length) {
+            try {
+                check();
+            } catch (DownloadCancelledException e) {
+                aborted = e;
+                throw new Aborted(e);
+            }
+        }
+    }
+
+    /**
+     * @return whether a failed download hints at a host that is down or overloaded, rather than at the download
+     *         being aborted, running out of time, or its stream refusing the content.
+     */
+    private static boolean isHostFailure(Abort abort, StreamLanding landing) {
+        return !abort.isAborted() && !abort.isExpired() && (landing == null || !landing.isLocalFailure());
+    }
+
+    /**
+     * Where a {@link StreamingWagon} writes a download that does not land in a file.
+     */
+    private abstract static class StreamLanding extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        /**
+         * @return whether a write failed because of this side, not the host.
+         */
+        abstract boolean isLocalFailure();
+    }
+
+    /**
+     * Collects the content of a download in memory, up to a threshold. Content past the threshold spills, with what
+     * was collected so far, into a file in the download directory, so the download goes on instead of starting over.
+     */
+    private final class MemoryLanding extends StreamLanding {
+
+        private final int threshold;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private File spilled;
+
+        private OutputStream spill;
+
+        private boolean localFailure;
+
+        MemoryLanding(int threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (spill == null && len <= threshold - bytes.size()) {
+                bytes.write(b, off, len);
+                return;
+            }
+
+            try {
+                if (spill == null) {
+                    spilled = Files.createTempFile(downloadDirectory().toPath(), "download-", null).toFile();
+                    spill = Files.newOutputStream(spilled.toPath());
+                    bytes.writeTo(spill);
+                    bytes.reset();
+                }
+
+                spill.write(b, off, len);
+            } catch (IOException e) {
+                localFailure = true;
+                throw e;
+            }
+        }
+
+        @Override
+        boolean isLocalFailure() {
+            return localFailure;
+        }
+
+        /**
+         * @return the file the content spilled into, complete, or {@code null} if it is all in memory.
+         */
+        File finish() throws IOException {
+            if (spill != null) {
+                spill.close();
+            }
+
+            return spilled;
+        }
+
+        /**
+         * Deletes the file the content spilled into, if any.
+         */
+        void discard() {
+            if (spill != null) {
+                try {
+                    spill.close();
+                } catch (IOException e) {
+                    // deleted next.
+                }
+            }
+            if (spilled != null) {
+                spilled.delete();
+            }
+        }
+
+        ByteBuffer toBuffer() {
+            return ByteBuffer.wrap(bytes.toByteArray()).asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Feeds a download through a bounded pipe to an extraction on another thread, started by the first write.
+     */
+    private static final class PipeLanding extends StreamLanding {
+
+        private final ArchiveExtractor extractor;
+
+        private final ArchiveExtractor.Format format;
+
+        private final int bufferSize;
+
+        private PipedOutputStream pipe;
+
+        private ExecutorService executor;
+
+        private Future<Integer> extraction;
+
+        private volatile boolean extractionFailed;
+
+        PipeLanding(ArchiveExtractor extractor, ArchiveExtractor.Format format, int bufferSize) {
+            this.extractor = extractor;
+            this.format = format;
+            this.bufferSize = bufferSize;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (pipe == null) {
+                start();
+            }
+
+            pipe.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (pipe != null) {
+                pipe.close();
+            }
+        }
+
+        @Override
+        boolean isLocalFailure() {
+            return extractionFailed;
+        }
+
+        private void start() throws IOException {
+            PipedInputStream in = new PipedInputStream(bufferSize);
+            pipe = new PipedOutputStream(in);
+
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "maven-shared-io-download-extract");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            extraction = executor.submit(() -> {
+                try {
+                    int files = extractor.extract(in, format);
+
+                    // Take what follows the archive, such as the central directory of a zip, so the Wagon can end.
+                    byte[] rest = new byte[8192];
+                    while (in.read(rest) != -1) {
+                        // Discarded.
+                    }
+
+                    return files;
+                } catch (IOException | RuntimeException e) {
+                    // Before the pipe closes, so the failing write of the Wagon is known to be this side's.
+                    extractionFailed = true;
+                    throw e;
+                } finally {
+                    in.close();
+                }
+            });
+        }
+
+        /**
+         * Ends the input of the extraction after a complete download, and waits for it.
+         *
+         * @return the number of files extracted.
+         * @throws IOException if the extraction failed.
+         */
+        int finish() throws IOException {
+            if (pipe == null) {
+                // Nothing was downloaded, which the extraction is to judge.
+                start();
+            }
+
+            try {
+                pipe.close();
+
+                return extraction.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while extracting", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        /**
+         * Ends the input of the extraction after a failed download.
+         *
+         * @return the failure of the extraction, if any.
+         */
+        IOException abandon() {
+            if (pipe == null) {
+                return null;
+            }
+
+            try {
+                finish();
+                return null;
+            } catch (IOException e) {
+                return e;
+            }
+        }
+    }
+
+    /**
+     * Records the modification time the server reports for a download, its validator for a later revalidation.
+     */
+    private static final class RemoteLastModified extends AbstractTransferListener {
+
+        private volatile long lastModified;
+
+        @Override
+        public void transferStarted(TransferEvent transferEvent) {
+            lastModified = Math.max(0, transferEvent.getResource().getLastModified());
+        }
+    }
+
+    /**
+     * Records when the host started sending, which tells its latency apart from the size of the download.
+     */
+    private static final class FirstByteTimer extends AbstractTransferListener {
+
+        private volatile long startedAt;
+
+        @Override
+        public void transferStarted(TransferEvent transferEvent) {
+            startedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Checks the content length against the usable space of the landing file when the transfer starts, and, for a
+     * download written through {@link #open()}, extends the landing file to it.
+     */
+    private static final class Preallocation extends AbstractTransferListener {
+
+        private final String url;
+
+        private final File landing;
+
+        private final boolean streamed;
+
+        private RandomAccessFile file;
+
+        Preallocation(String url, File landing, boolean streamed) {
+            this.url = url;
+            this.landing = landing;
+            this.streamed = streamed;
+        }
+
+        boolean isStreamed() {
+            return streamed;
+        }
+
+        /**
+         * @return a stream writing the landing file from its start. Closing it cuts the file to what was written.
+         * @throws IOException if the landing file cannot be opened.
+         */
+        OutputStream open() throws IOException {
+            file = new RandomAccessFile(landing, "rw");
+
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    file.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    file.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        file.setLength(file.getFilePointer());
+                    } finally {
+                        file.close();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void transferStarted(TransferEvent transferEvent) {
+            long length = transferEvent.getResource().getContentLength();
+            if (length <= 0) {
+                return;
+            }
+
+            long usable;
+            try {
+                usable = Files.getFileStore(landing.toPath()).getUsableSpace();
+            } catch (IOException e) {
+                // Unknown, so let the download find out.
+                return;
+            }
+
+            if (usable < length) {
+                throw new Aborted(new DownloadFailedException(
+                        url,
+                        "Download failed fast, it needs " + length + " bytes but only " + usable
+                                + " are usable in: " + landing.getParent()));
+            }
+
+            if (file != null) {
+                try {
+                    file.setLength(length);
+                } catch (IOException e) {
+                    // Only an optimization. Writing finds out whether the space is really there.
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for a permit to download from a host, checking for cancellation and the deadline in between.
+     */
+    private static void acquire(AdaptiveConcurrencyLimit concurrencyLimit, Abort abort)
+            throws DownloadFailedException {
+        try {
+            while (!concurrencyLimit.acquire(100, TimeUnit.MILLISECONDS)) {
+                abort.check();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new DownloadCancelledException(abort.url, "Interrupted while waiting to download.");
+        }
+    }
+
+    /**
+     * @param sourceUrl the URL.
+     * @return the host and port of the URL, in the form downloads are limited by.
+     */
+    private static String hostKey(URL sourceUrl) {
+        String host = sourceUrl.getHost().toLowerCase(Locale.ROOT);
+        int port = (sourceUrl.getPort() != -1) ? sourceUrl.getPort() : sourceUrl.getDefaultPort();
+
+        return (port != -1) ? host + ":" + port : host;
+    }
+
+    /**
+     * Carries the failure that aborts a download, such as a {@link DownloadCancelledException}, out of a transfer
+     * listener, through the Wagon.
+     */
+    private static final class Aborted extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        Aborted(DownloadFailedException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized DownloadFailedException getCause() {
+            return (DownloadFailedException) super.getCause();
+        }
+    }
+
+    /**
+     * Caches a completed download that is never revalidated, unless another thread cached the same URL first.
+     *
+     * @param url the URL.
+     * @param downloaded the file downloaded from it.
+     * @return the file to hand out: the one cached first, which callers may already be using, or {@code downloaded}.
+     */
+    private File cacheDownload(String url, File downloaded) {
+        return cacheDownload(url, downloaded, null);
+    }
+
+    /**
+     * Caches a completed download, unless another thread cached the same URL first.
+     *
+     * @param url the URL.
+     * @param downloaded the file downloaded from it.
+     * @param entry when it was downloaded and its validators, or {@code null} if it is never revalidated.
+     * @return the file to hand out: the one cached first, which callers may already be using, or {@code downloaded}.
+     */
+    private File cacheDownload(String url, File downloaded, DownloadIndex.Entry entry) {
+        File cached = cache.putIfAbsent(url, downloaded);
+
+        if (cached != null && cached.exists() && (entry == null || staleEntry(url, cached) == null)) {
+            return cached;
+        }
+
+        if (cached != null && cache.replace(url, cached, downloaded) && !cached.equals(downloaded)) {
+            // The cached file is gone or stale. Losing the race to replace it is harmless, as either file is valid.
+            forgetDownload(cached);
+        }
+
+        if (entry != null) {
+            validators.put(url, entry);
+        } else {
+            validators.remove(url);
+        }
+
+        DownloadIndex persistentIndex = index;
+        if (persistentIndex != null) {
+            try {
+                // A remote modification time of -1 marks a download that is never revalidated.
+                persistentIndex.append(
+                        (entry != null)
+                                ? entry
+                                : new DownloadIndex.Entry(url, downloaded, System.currentTimeMillis(), -1));
+            } catch (IOException e) {
+                // The download is good. Only the next JVM downloads it again.
+            }
+        }
+
+        return downloaded;
+    }
+
+    /**
+     * Deletes a file of the download directory that a newer download of its URL replaced, once the JVM exits, as
+     * callers may still read it. A temporary download directory is deleted then anyway, but a persistent one keeps
+     * the files nothing else deletes.
+     */
+    private void forgetDownload(File replaced) {
+        File directory;
+        synchronized (this) {
+            directory = downloadDirectory;
+        }
+
+        if (directory != null && directory.getAbsoluteFile().equals(replaced.getAbsoluteFile().getParentFile())) {
+            replaced.deleteOnExit();
+        }
+    }
+
+    /**
+     * @return the validators of a download just transferred, or {@code null} if downloads are not revalidated.
+     */
+    private DownloadIndex.Entry validated(String url, File downloaded, RemoteLastModified remoteLastModified) {
+        if (remoteLastModified == null) {
+            return null;
+        }
+
+        return new DownloadIndex.Entry(url, downloaded, System.currentTimeMillis(), remoteLastModified.lastModified);
+    }
+
+    /**
+     * @return the entry of a cached download if it is older than the max age, {@code null} if it is fresh or never
+     *         revalidated.
+     */
+    private DownloadIndex.Entry staleEntry(String url, File cached) {
+        if (maxAgeMillis <= 0) {
+            return null;
+        }
+
+        DownloadIndex.Entry entry = validators.get(url);
+        if (entry == null || !entry.getFile().equals(cached)) {
+            return null;
+        }
+
+        return (System.currentTimeMillis() - entry.getFetchedAt() > maxAgeMillis) ? entry : null;
+    }
+
+    /**
+     * Keeps using a revalidated download for another max age.
+     *
+     * @return its file.
+     */
+    private File confirm(DownloadIndex.Entry stale) {
+        DownloadIndex.Entry confirmed = new DownloadIndex.Entry(
+                stale.getUrl(), stale.getFile(), System.currentTimeMillis(), stale.getRemoteLastModified());
+
+        validators.replace(stale.getUrl(), stale, confirmed);
+
+        DownloadIndex persistentIndex = index;
+        if (persistentIndex != null) {
+            try {
+                persistentIndex.append(confirmed);
+            } catch (IOException e) {
+                // Only the next JVM revalidates it sooner.
+            }
+        }
+
+        return stale.getFile();
+    }
+
+    /**
+     * Downloads an HTTP URL as concurrently fetched ranges, if it is large enough and the server serves ranges.
+     * Transfer listeners are notified as by a Wagon, with the Wagon that was not used as the event source.
+     *
+     * @return whether the URL was downloaded; if not, the Wagon has to.
+     * @throws IOException if the segmented download started and failed.
+     */
+    private boolean downloadSegmented(
+            URL sourceUrl,
+            Repository repo,
+            Wagon wagon,
+            File downloaded,
+            List<TransferListener> transferListeners,
+            MessageHolder messageHolder)
+            throws IOException {
+        String protocol = sourceUrl.getProtocol();
+        if (!"http".equalsIgnoreCase(protocol) && !"https".equalsIgnoreCase(protocol)) {
+            return false;
+        }
+
+        // The timeouts of the Wagon, which are shortened to the deadline of the download if it has one.
+        SegmentedDownload segmented = new SegmentedDownload(
+                sourceUrl,
+                getAuthenticationInfo(repo.getId()),
+                getProxy(protocol),
+                wagon.getTimeout(),
+                wagon.getReadTimeout());
+
+        try {
+            if (!segmented.probe() || segmented.getContentLength() < segmentThreshold) {
+                return false;
+            }
+        } catch (IOException e) {
+            // Let the Wagon try, and report the failure in its own terms.
+            messageHolder.addMessage("Cannot download in segments: " + sourceUrl, e);
+            return false;
+        }
+
+        messageHolder.addMessage("Getting: " + sourceUrl.getPath() + " in " + segmentCount + " segments of "
+                + segmented.getContentLength() + " bytes in total.");
+
+        Resource resource = new Resource(sourceUrl.getPath());
+        resource.setContentLength(segmented.getContentLength());
+        resource.setLastModified(segmented.getLastModified());
+
+        TransferEvent event =
+                new TransferEvent(wagon, resource, TransferEvent.TRANSFER_INITIATED, TransferEvent.REQUEST_GET);
+        event.setLocalFile(downloaded);
+        transferListeners.forEach(listener -> listener.transferInitiated(event));
+
+        event.setEventType(TransferEvent.TRANSFER_STARTED);
+        transferListeners.forEach(listener -> listener.transferStarted(event));
+
+        event.setEventType(TransferEvent.TRANSFER_PROGRESS);
+        try {
+            segmented.download(downloaded, segmentCount, (buffer, length) -> {
+                for (TransferListener listener : transferListeners) {
+                    listener.transferProgress(event, buffer, length);
+                }
+            });
+        } catch (IOException e) {
+            TransferEvent error = new TransferEvent(wagon, resource, e, TransferEvent.REQUEST_GET);
+            error.setLocalFile(downloaded);
+            transferListeners.forEach(listener -> listener.transferError(error));
+
+            throw e;
+        }
+
+        event.setEventType(TransferEvent.TRANSFER_COMPLETED);
+        transferListeners.forEach(listener -> listener.transferCompleted(event));
+
+        return true;
+    }
+
+    /**
+     * @param sourceUrl the URL.
+     * @return whether the URL names a file on this machine. A {@code file:} URL with a host, such as a UNC path,
+     *         is left to the Wagon.
+     */
+    private static boolean isLocalFile(URL sourceUrl) {
+        String host = sourceUrl.getHost();
+
+        return "file".equalsIgnoreCase(sourceUrl.getProtocol())
+                && (host == null || host.isEmpty() || "localhost".equalsIgnoreCase(host));
+    }
+
+    /**
+     * Serves a {@code file:} URL from the file system, as configured by {@link #setLocalFileMode(LocalFileMode)}.
+     */
+    private File downloadLocalFile(String url, URL sourceUrl, MessageHolder messageHolder)
+            throws DownloadFailedException {
+        File source = FileUtils.toFile(sourceUrl);
+
+        if (source == null || !source.isFile()) {
+            throw new DownloadFailedException(url, "Download failed, no such file: " + source);
+        }
+
+        if (localFileMode == LocalFileMode.DIRECT) {
+            messageHolder.addMessage("Using local file: " + source.getAbsolutePath());
+
+            return cacheDownload(url, source);
+        }
+
+        File target;
+        try {
+            // Only the unique name is wanted; a link cannot replace an existing file.
+            target = Files.createTempFile(downloadDirectory().toPath(), "download-", null)
+                    .toFile();
+            Files.delete(target.toPath());
+        } catch (IOException e) {
+            throw new DownloadFailedException(url, "Failed to create temporary file target for download.", e);
+        }
+
+        try {
+            try {
+                Files.createLink(target.toPath(), source.toPath());
+
+                messageHolder.addMessage("Linked local file: " + source.getAbsolutePath() + " to: " + target);
+            } catch (IOException | UnsupportedOperationException e) {
+                // Another file system, or one without hard links.
+                Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+                messageHolder.addMessage("Copied local file: " + source.getAbsolutePath() + " to: " + target);
+            }
+        } catch (IOException e) {
+            target.delete();
+
+            throw new DownloadFailedException(url, "Download failed", e);
+        }
+
+        File result = cacheDownload(url, target);
+
+        if (result != target) {
+            target.delete();
+        }
+
+        return result;
+    }
 }
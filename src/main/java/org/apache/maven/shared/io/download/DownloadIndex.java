@@ -0,0 +1,341 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The downloads of a persistent download directory, by URL, in an append-only log that is mapped into memory to be
+ * read at startup. Each download appends one record; the last record of a URL wins. A record whose file is gone or
+ * changed size or modification time since is dropped on load. The log is rewritten without such records, and without
+ * a record torn by a crash, when they make up most of it.
+ *
+ * <p>Managers in several processes can share the directory: appending, reading and rewriting the log all hold an
+ * exclusive lock on a sibling lock file, so a record appended by one is never lost to a rewrite by another. The log
+ * itself cannot carry the lock, as a rewrite replaces it.
+ */
+final class DownloadIndex {
+
+    /**
+     * "MSDI", then the version, at the start of the log.
+     */
+    private static final int MAGIC = 0x4d534449;
+
+    private static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * The monitors of the lock files held by this JVM, as a file lock is held by the whole JVM and overlapping ones
+     * throw.
+     */
+    private static final ConcurrentMap<Path, Object> MONITORS = new ConcurrentHashMap<>();
+
+    private final Path file;
+
+    private final Path lockFile;
+
+    DownloadIndex(Path file) {
+        this.file = file;
+        this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    Path getLockFile() {
+        return lockFile;
+    }
+
+    /**
+     * Reads the log, starting a new one if there is none or it has another version.
+     *
+     * @return the entries by URL whose files are unchanged, in the order they were downloaded.
+     * @throws IOException if the log cannot be read or started.
+     */
+    Map<String, Entry> load() throws IOException {
+        synchronized (monitor()) {
+            try (FileChannel lock = lock()) {
+                return read();
+            }
+        }
+    }
+
+    private Map<String, Entry> read() throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+
+        if (!Files.isRegularFile(file) || Files.size(file) < HEADER_SIZE) {
+            rewrite(entries);
+            return entries;
+        }
+
+        int records = 0;
+        boolean torn = false;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (log.getInt() != MAGIC || log.getInt() != VERSION) {
+                rewrite(entries);
+                return entries;
+            }
+
+            while (log.hasRemaining()) {
+                Entry entry;
+                try {
+                    entry = Entry.read(log);
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    // Torn by a crash while appending. Everything after it is lost anyway.
+                    torn = true;
+                    break;
+                }
+                records++;
+
+                if (entry.isUnchanged()) {
+                    entries.put(entry.url, entry);
+                } else {
+                    entries.remove(entry.url);
+                }
+            }
+        }
+
+        if (torn || records > 2 * entries.size() + 16) {
+            try {
+                rewrite(entries);
+            } catch (IOException e) {
+                // Such as a file system that does not replace a file still mapped. The log stays usable as it is.
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Appends the record of a download.
+     *
+     * @param entry the download.
+     * @throws IOException if the record cannot be written.
+     */
+    void append(Entry entry) throws IOException {
+        ByteBuffer record = entry.toBuffer();
+
+        synchronized (monitor()) {
+            try (FileChannel lock = lock();
+                    FileChannel channel =
+                            FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+        }
+    }
+
+    /**
+     * Empties the log.
+     *
+     * @throws IOException if it cannot be written.
+     */
+    void clear() throws IOException {
+        synchronized (monitor()) {
+            try (FileChannel lock = lock()) {
+                rewrite(new LinkedHashMap<String, Entry>());
+            }
+        }
+    }
+
+    private Object monitor() {
+        return MONITORS.computeIfAbsent(lockFile.toAbsolutePath().normalize(), path -> new Object());
+    }
+
+    /**
+     * Opens the lock file and locks it exclusively, waiting for other processes to release it.
+     *
+     * @return the channel of the lock file; closing it releases the lock.
+     */
+    private FileChannel lock() throws IOException {
+        Files.createDirectories(lockFile.getParent());
+
+        FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            channel.lock();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        return channel;
+    }
+
+    /**
+     * Replaces the log with one holding the given entries, atomically, so a crash leaves either log. The caller holds
+     * the lock.
+     */
+    private void rewrite(Map<String, Entry> entries) throws IOException {
+        Files.createDirectories(file.getParent());
+
+        Path rewritten = Files.createTempFile(file.getParent(), file.getFileName() + ".", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(rewritten, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                channel.write(header);
+
+                for (Entry entry : entries.values()) {
+                    ByteBuffer record = entry.toBuffer();
+                    while (record.hasRemaining()) {
+                        channel.write(record);
+                    }
+                }
+            }
+
+            Files.move(rewritten, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(rewritten);
+        }
+    }
+
+    /**
+     * One download. Recorded as its length, then the URL and the absolute path of the file, their length and
+     * modification time when it was downloaded, when it was downloaded, and the modification time the server
+     * reported for it.
+     */
+    static final class Entry {
+
+        private final String url;
+
+        private final File file;
+
+        private final long length;
+
+        private final long lastModified;
+
+        private final long fetchedAt;
+
+        private final long remoteLastModified;
+
+        /**
+         * @param url the URL.
+         * @param file the file downloaded from it.
+         * @param fetchedAt when the file was downloaded or last confirmed unchanged, in milliseconds since the epoch.
+         * @param remoteLastModified the modification time the server reported, 0 if unknown, or -1 if the download
+         *            is never revalidated.
+         */
+        Entry(String url, File file, long fetchedAt, long remoteLastModified) {
+            this(url, file, file.length(), file.lastModified(), fetchedAt, remoteLastModified);
+        }
+
+        private Entry(
+                String url, File file, long length, long lastModified, long fetchedAt, long remoteLastModified) {
+            this.url = url;
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.fetchedAt = fetchedAt;
+            this.remoteLastModified = remoteLastModified;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        /**
+         * @return when the file was downloaded or last confirmed unchanged, in milliseconds since the epoch.
+         */
+        long getFetchedAt() {
+            return fetchedAt;
+        }
+
+        /**
+         * @return the modification time the server reported, or 0 if unknown.
+         */
+        long getRemoteLastModified() {
+            return remoteLastModified;
+        }
+
+        private boolean isUnchanged() {
+            return file.isFile() && file.length() == length && file.lastModified() == lastModified;
+        }
+
+        ByteBuffer toBuffer() {
+            byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+            byte[] pathBytes = file.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+
+            int size = 4 + urlBytes.length + 4 + pathBytes.length + 4 * 8;
+            ByteBuffer buffer = ByteBuffer.allocate(4 + size);
+            buffer.putInt(size);
+            buffer.putInt(urlBytes.length).put(urlBytes);
+            buffer.putInt(pathBytes.length).put(pathBytes);
+            buffer.putLong(length).putLong(lastModified).putLong(fetchedAt).putLong(remoteLastModified);
+            buffer.flip();
+
+            return buffer;
+        }
+
+        /**
+         * @throws BufferUnderflowException if the log ends within the record.
+         * @throws IllegalArgumentException if the record is malformed.
+         */
+        static Entry read(ByteBuffer log) {
+            int size = log.getInt();
+            if (size < 4 + 4 + 4 * 8 || size > log.remaining()) {
+                throw new BufferUnderflowException();
+            }
+
+            ByteBuffer record = log.slice();
+            record.limit(size);
+            log.position(log.position() + size);
+
+            String url = string(record);
+            String path = string(record);
+
+            return new Entry(
+                    url, new File(path), record.getLong(), record.getLong(), record.getLong(), record.getLong());
+        }
+
+        private static String string(ByteBuffer record) {
+            int length = record.getInt();
+            if (length < 0 || length > record.remaining()) {
+                throw new IllegalArgumentException("Malformed record");
+            }
+
+            byte[] bytes = new byte[length];
+            record.get(bytes);
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
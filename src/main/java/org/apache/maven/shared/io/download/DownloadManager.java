@@ -20,6 +20,7 @@ package org.apache.maven.shared.io.download;
 
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.maven.shared.io.logging.MessageHolder;
 import org.apache.maven.wagon.events.TransferListener;
@@ -55,4 +56,35 @@ public interface DownloadManager {
      */
     File download(String url, List<TransferListener> transferListeners, MessageHolder messageHolder)
             throws DownloadFailedException;
+
+    /**
+     * Downloads with a deadline and a way to cancel. Both are checked before connecting and after every chunk
+     * transferred, and the connect and read timeouts are shortened to the time left, so a hung server cannot hold
+     * the caller past the deadline for long. This default implementation cannot interrupt a transfer and only checks
+     * them before it starts.
+     *
+     * @param url The URL.
+     * @param transferListeners {@link TransferListener}
+     * @param messageHolder {@link MessageHolder}
+     * @param timeout the time the download may take, or 0 for no deadline.
+     * @param unit the unit of the timeout.
+     * @param cancellation {@link CancellationToken}, or {@code null} if the download cannot be cancelled.
+     * @return {@link File}
+     * @throws DownloadCancelledException if the download was cancelled or ran out of time.
+     * @throws DownloadFailedException in case of exception.
+     */
+    default File download(
+            String url,
+            List<TransferListener> transferListeners,
+            MessageHolder messageHolder,
+            long timeout,
+            TimeUnit unit,
+            CancellationToken cancellation)
+            throws DownloadFailedException {
+        if (cancellation != null && cancellation.isCancelled()) {
+            throw new DownloadCancelledException(url, "Download cancelled.");
+        }
+
+        return download(url, transferListeners, messageHolder);
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Content downloaded into memory, by URL, bounded by the total number of bytes. The least recently used content is
+ * evicted first.
+ */
+final class MemoryCache {
+
+    private final Map<String, Content> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long capacity;
+
+    private long size;
+
+    MemoryCache(long capacity) {
+        this.capacity = Math.max(0, capacity);
+    }
+
+    /**
+     * @param url the URL of the content.
+     * @return the content, as a read-only buffer of its own, or {@code null} if not cached.
+     */
+    ByteBuffer get(String url) {
+        return get(url, 0);
+    }
+
+    /**
+     * @param url the URL of the content.
+     * @param maxAgeNanos how long content is handed out after it was cached, or 0 for as long as it is cached.
+     * @return the content, as a read-only buffer of its own, or {@code null} if not cached or older, which is then
+     *         evicted.
+     */
+    synchronized ByteBuffer get(String url, long maxAgeNanos) {
+        Content content = entries.get(url);
+        if (content == null) {
+            return null;
+        }
+
+        if (maxAgeNanos > 0 && System.nanoTime() - content.cachedAt > maxAgeNanos) {
+            entries.remove(url);
+            size -= content.buffer.remaining();
+
+            return null;
+        }
+
+        return content.buffer.duplicate();
+    }
+
+    /**
+     * Caches the content, unless it is larger than the whole cache, evicting other content as needed.
+     *
+     * @param url the URL of the content.
+     * @param content the content from its position to its limit, read-only.
+     */
+    synchronized void put(String url, ByteBuffer content) {
+        Content previous = entries.remove(url);
+        if (previous != null) {
+            size -= previous.buffer.remaining();
+        }
+
+        if (content.remaining() > capacity) {
+            return;
+        }
+
+        entries.put(url, new Content(content.duplicate()));
+        size += content.remaining();
+
+        evict();
+    }
+
+    /**
+     * @param capacity the number of bytes to keep at most, evicting content now if it is over.
+     */
+    synchronized void setCapacity(long capacity) {
+        this.capacity = Math.max(0, capacity);
+
+        evict();
+    }
+
+    /**
+     * @return the number of bytes of content cached.
+     */
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    private void evict() {
+        Iterator<Content> eldest = entries.values().iterator();
+
+        while (size > capacity && eldest.hasNext()) {
+            size -= eldest.next().buffer.remaining();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Cached content and when it was cached.
+     */
+    private static final class Content {
+
+        private final ByteBuffer buffer;
+
+        private final long cachedAt = System.nanoTime();
+
+        Content(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
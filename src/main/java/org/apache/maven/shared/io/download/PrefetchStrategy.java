@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.util.List;
+
+/**
+ * Names the URLs likely to be requested right after a download, so {@link DefaultDownloadManager} can fetch them in
+ * the background before they are asked for.
+ *
+ * @see DefaultDownloadManager#setPrefetch(PrefetchStrategy, int, long, java.util.concurrent.TimeUnit)
+ */
+public interface PrefetchStrategy {
+
+    /**
+     * @param url the URL just requested.
+     * @return the URLs to prefetch, most likely first, or an empty list.
+     */
+    List<String> getRelatedUrls(String url);
+}
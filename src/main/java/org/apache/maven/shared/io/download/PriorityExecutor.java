@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs tasks on a fixed number of daemon threads, the most urgent waiting task first. A task is due at the time it was
+ * submitted plus its rank times the aging step, and the task due first runs next. A task of a lower rank thus
+ * overtakes tasks of higher ranks submitted later, but only by as many aging steps as the ranks are apart, so no
+ * task waits forever behind a stream of more urgent ones.
+ */
+final class PriorityExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    private final long agingNanos;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param threads the number of threads, which end when idle for a minute.
+     * @param agingNanos how long a task of one rank waits at most before tasks of the next lower rank, submitted
+     *            later, stop overtaking it.
+     */
+    PriorityExecutor(int threads, long agingNanos) {
+        this.agingNanos = Math.max(0, agingNanos);
+
+        executor = new ThreadPoolExecutor(
+                Math.max(1, threads),
+                Math.max(1, threads),
+                1,
+                TimeUnit.MINUTES,
+                new PriorityBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "maven-shared-io-download-async");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param rank the urgency of the task, 0 the most urgent.
+     * @param task the task.
+     * @return the future of the task. Cancelling it before the task started keeps the task from running.
+     */
+    <T> CompletableFuture<T> submit(int rank, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        executor.execute(new Task(System.nanoTime() + rank * agingNanos, sequence.getAndIncrement(), () -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(task.call());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }));
+
+        return future;
+    }
+
+    /**
+     * Lets the submitted tasks run, but takes no new ones.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread.
+     */
+    int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * A task ordered by when it is due, then by when it was submitted.
+     */
+    private static final class Task implements Runnable, Comparable<Task> {
+
+        private final long dueAt;
+
+        private final long sequence;
+
+        private final Runnable runnable;
+
+        Task(long dueAt, long sequence, Runnable runnable) {
+            this.dueAt = dueAt;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            // Compared by difference, as nanoTime may overflow.
+            long due = dueAt - other.dueAt;
+            if (due != 0) {
+                return (due < 0) ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.maven.wagon.events.TransferEvent;
+import org.apache.maven.wagon.events.TransferListener;
+import org.apache.maven.wagon.observers.AbstractTransferListener;
+
+/**
+ * Aggregates the progress of all downloads running at the same time into one summary, reported at a fixed rate from
+ * a single thread. Each download only adds to shared counters per chunk, so many parallel downloads cost no more than
+ * one listener call each per chunk, and the {@link Sink} is called at most once per interval, however many chunks
+ * arrived.
+ *
+ * @see DefaultDownloadManager#setProgressHub(ProgressHub)
+ */
+public class ProgressHub implements Closeable {
+
+    /**
+     * Receives the summaries, always on the thread of the hub.
+     */
+    public interface Sink {
+
+        /**
+         * @param summary the progress since the hub was created.
+         */
+        void progress(Summary summary);
+    }
+
+    /**
+     * The progress of all downloads at one point in time.
+     */
+    public static final class Summary {
+
+        private final long transferredBytes;
+
+        private final long totalBytes;
+
+        private final int activeDownloads;
+
+        private final long completedDownloads;
+
+        private final long bytesPerSecond;
+
+        private final long remainingMillis;
+
+        private final Map<String, Long> bytesPerSecondByHost;
+
+        Summary(
+                long transferredBytes,
+                long totalBytes,
+                int activeDownloads,
+                long completedDownloads,
+                long bytesPerSecond,
+                long remainingMillis,
+                Map<String, Long> bytesPerSecondByHost) {
+            this.transferredBytes = transferredBytes;
+            this.totalBytes = totalBytes;
+            this.activeDownloads = activeDownloads;
+            this.completedDownloads = completedDownloads;
+            this.bytesPerSecond = bytesPerSecond;
+            this.remainingMillis = remainingMillis;
+            this.bytesPerSecondByHost = Collections.unmodifiableMap(bytesPerSecondByHost);
+        }
+
+        /**
+         * @return the bytes transferred by all downloads so far.
+         */
+        public long getTransferredBytes() {
+            return transferredBytes;
+        }
+
+        /**
+         * @return the content length of all downloads started so far, as far as known.
+         */
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * @return the downloads in progress.
+         */
+        public int getActiveDownloads() {
+            return activeDownloads;
+        }
+
+        /**
+         * @return the downloads finished so far, whether they succeeded or failed.
+         */
+        public long getCompletedDownloads() {
+            return completedDownloads;
+        }
+
+        /**
+         * @return the rate of all downloads over the last interval.
+         */
+        public long getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        /**
+         * @return the estimated time until the downloads in progress are done, or -1 if unknown because a download
+         *         did not announce its content length or nothing was transferred in the last interval.
+         */
+        public long getRemainingMillis() {
+            return remainingMillis;
+        }
+
+        /**
+         * @return the rate over the last interval per host and port, of the hosts downloaded from so far.
+         */
+        public Map<String, Long> getBytesPerSecondByHost() {
+            return bytesPerSecondByHost;
+        }
+
+        @Override
+        public String toString() {
+            return transferredBytes + "/" + totalBytes + " bytes, " + activeDownloads + " active, "
+                    + completedDownloads + " completed, " + bytesPerSecond + " bytes/s, ETA "
+                    + ((remainingMillis >= 0) ? TimeUnit.MILLISECONDS.toSeconds(remainingMillis) + "s" : "unknown");
+        }
+    }
+
+    private final Sink sink;
+
+    private final long intervalNanos;
+
+    private final LongAdder transferred = new LongAdder();
+
+    private final LongAdder total = new LongAdder();
+
+    private final LongAdder active = new LongAdder();
+
+    private final LongAdder completed = new LongAdder();
+
+    /**
+     * Downloads in progress that did not announce their content length.
+     */
+    private final LongAdder unknownLength = new LongAdder();
+
+    private final Map<String, LongAdder> transferredByHost = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    // Only touched by the thread of the hub.
+
+    private long lastEmitted = System.nanoTime();
+
+    private long lastTransferred;
+
+    private long lastCompleted;
+
+    private final Map<String, Long> lastTransferredByHost = new TreeMap<>();
+
+    /**
+     * @param sink receives the summaries.
+     * @param interval how often the sink is called at most, and only while the progress changes.
+     * @param unit the unit of the interval.
+     */
+    public ProgressHub(Sink sink, long interval, TimeUnit unit) {
+        this.sink = sink;
+        this.intervalNanos = Math.max(1, unit.toNanos(interval));
+    }
+
+    /**
+     * @param host the host and port of the download, which the rate per host is reported by.
+     * @return a listener for one download, started on first use.
+     */
+    public TransferListener newListener(String host) {
+        start();
+
+        return new Listener(transferredByHost.computeIfAbsent(host, h -> new LongAdder()));
+    }
+
+    /**
+     * Stops the thread of the hub, after reporting the progress one last time if it changed. Downloads still in
+     * progress keep counting, but are no longer reported.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService stopped;
+        synchronized (this) {
+            stopped = scheduler;
+            scheduler = null;
+        }
+
+        if (stopped != null) {
+            // Runs on the thread of the hub. The shutdown lets it run and cancels the periodic report.
+            stopped.execute(this::emit);
+            stopped.shutdown();
+            try {
+                stopped.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "maven-shared-io-download-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::emit, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reports the progress to the sink if it changed since the last report. Called by the thread of the hub.
+     */
+    void emit() {
+        long now = System.nanoTime();
+        long elapsed = Math.max(1, now - lastEmitted);
+
+        long transferredNow = transferred.sum();
+        long completedNow = completed.sum();
+
+        if (transferredNow == lastTransferred && completedNow == lastCompleted) {
+            return;
+        }
+
+        long bytesPerSecond = perSecond(transferredNow - lastTransferred, elapsed);
+
+        Map<String, Long> byHost = new TreeMap<>();
+        transferredByHost.forEach((host, bytes) -> {
+            long sum = bytes.sum();
+            Long last = lastTransferredByHost.put(host, sum);
+            byHost.put(host, perSecond(sum - ((last != null) ? last : 0), elapsed));
+        });
+
+        long totalNow = total.sum();
+        long remainingMillis = -1;
+        if (unknownLength.sum() == 0 && bytesPerSecond > 0) {
+            remainingMillis = Math.max(0, totalNow - transferredNow) * 1000 / bytesPerSecond;
+        }
+
+        lastEmitted = now;
+        lastTransferred = transferredNow;
+        lastCompleted = completedNow;
+
+        sink.progress(new Summary(
+                transferredNow,
+                totalNow,
+                (int) active.sum(),
+                completedNow,
+                bytesPerSecond,
+                remainingMillis,
+                byHost));
+    }
+
+    private static long perSecond(long bytes, long elapsedNanos) {
+        return (long) (bytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos);
+    }
+
+    /**
+     * Counts the progress of one download.
+     */
+    private final class Listener extends AbstractTransferListener {
+
+        private final LongAdder hostTransferred;
+
+        private long contentLength = -1;
+
+        private long bytes;
+
+        private boolean started;
+
+        Listener(LongAdder hostTransferred) {
+            this.hostTransferred = hostTransferred;
+        }
+
+        @Override
+        public void transferStarted(TransferEvent transferEvent) {
+            if (started) {
+                return;
+            }
+            started = true;
+
+            active.increment();
+
+            long length = transferEvent.getResource().getContentLength();
+            if (length > 0) {
+                contentLength = length;
+                total.add(length);
+            } else {
+                unknownLength.increment();
+            }
+        }
+
+        @Override
+        public void transferProgress(TransferEvent transferEvent, byte[] buffer, int length) {
+            bytes += length;
+            transferred.add(length);
+            hostTransferred.add(length);
+        }
+
+        @Override
+        public void transferCompleted(TransferEvent transferEvent) {
+            finish();
+        }
+
+        @Override
+        public void transferError(TransferEvent transferEvent) {
+            finish();
+        }
+
+        private void finish() {
+            if (!started) {
+                return;
+            }
+            started = false;
+
+            if (contentLength > 0) {
+                // What was announced but not transferred, so the total is what was transferred or is still to be.
+                total.add(bytes - contentLength);
+            } else {
+                unknownLength.decrement();
+                total.add(bytes);
+            }
+
+            active.decrement();
+            completed.increment();
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.wagon.authentication.AuthenticationInfo;
+import org.apache.maven.wagon.proxy.ProxyInfo;
+import org.apache.maven.wagon.proxy.ProxyUtils;
+
+/**
+ * Downloads one HTTP resource as several byte ranges fetched concurrently, each written at its own position of a
+ * landing file of the full size. Wagon has no notion of ranges, so this talks HTTP itself, with the credentials and
+ * proxy the Wagon would have used.
+ */
+final class SegmentedDownload {
+
+    /**
+     * Receives the bytes of all segments, one call per buffer. Calls come from several threads, one at a time.
+     */
+    interface Progress {
+
+        /**
+         * @param buffer the buffer.
+         * @param length how many bytes of the buffer were written to the landing file.
+         */
+        void transferred(byte[] buffer, int length);
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * How often a segment is requested before the download fails. Every attempt after the first resumes at the
+     * first byte the segment is still missing.
+     */
+    private static final int SEGMENT_ATTEMPTS = 3;
+
+    private final URL url;
+
+    private final AuthenticationInfo authenticationInfo;
+
+    private final ProxyInfo proxyInfo;
+
+    private final int connectTimeout;
+
+    private final int readTimeout;
+
+    /**
+     * The URL after redirects, so the segments do not each follow them again. Only one of the same origin as the URL,
+     * as the credentials of the repository are sent to it, while the JDK drops them when following a redirect to
+     * another host. The segments follow any other redirect again.
+     */
+    private URL resolvedUrl;
+
+    private long contentLength = -1;
+
+    private String entityTag;
+
+    private long lastModified;
+
+    /**
+     * @param url the URL.
+     * @param authenticationInfo the credentials, or {@code null} for none.
+     * @param proxyInfo the proxy, or {@code null} for none.
+     * @param connectTimeout the connect timeout of each request in milliseconds, 0 for none.
+     * @param readTimeout the read timeout of each request in milliseconds, 0 for none.
+     */
+    SegmentedDownload(
+            URL url, AuthenticationInfo authenticationInfo, ProxyInfo proxyInfo, int connectTimeout, int readTimeout) {
+        this.url = url;
+        this.authenticationInfo = authenticationInfo;
+        this.proxyInfo = proxyInfo;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Asks the server for the size of the resource and whether it serves byte ranges.
+     *
+     * @return whether the resource can be downloaded in segments.
+     * @throws IOException if the server cannot be asked.
+     */
+    boolean probe() throws IOException {
+        HttpURLConnection connection = open(url);
+        try {
+            connection.setRequestMethod("HEAD");
+
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                return false;
+            }
+
+            resolvedUrl = isSameOrigin(url, connection.getURL()) ? connection.getURL() : url;
+            contentLength = connection.getContentLengthLong();
+            lastModified = connection.getLastModified();
+
+            // Only a strong validator can guard the ranges against the resource changing in between.
+            String etag = connection.getHeaderField("ETag");
+            entityTag = (etag != null && !etag.startsWith("W/")) ? etag : null;
+
+            return contentLength > 0 && "bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * @return the size of the resource as reported by {@link #probe()}, or -1 if unknown.
+     */
+    long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return the modification time of the resource as reported by {@link #probe()}, or 0 if unknown.
+     */
+    long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Downloads the resource into the given file after a successful {@link #probe()}.
+     *
+     * @param target the landing file, which is resized to the length of the resource.
+     * @param segments the number of segments to fetch concurrently.
+     * @param progress notified of every buffer written. A runtime exception it throws aborts the download and is
+     *            rethrown.
+     * @throws IOException if a segment fails on all its attempts.
+     */
+    void download(File target, int segments, Progress progress) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+            file.setLength(contentLength);
+        }
+
+        long segmentLength = (contentLength + segments - 1) / segments;
+
+        ExecutorService executor = Executors.newFixedThreadPool(segments, runnable -> {
+            Thread thread = new Thread(runnable, "maven-shared-io-download-segment");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE)) {
+            List<Future<Void>> futures = new ArrayList<>();
+
+            for (long start = 0; start < contentLength; start += segmentLength) {
+                Segment segment = new Segment(start, Math.min(start + segmentLength, contentLength) - 1);
+
+                futures.add(executor.submit(() -> {
+                    fetchSegment(channel, segment, progress);
+                    return null;
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while downloading " + url, e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        // Such as a progress callback that aborts the download.
+                        throw (RuntimeException) cause;
+                    }
+                    throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+                }
+            }
+        } finally {
+            // Stop the other segments early if one of them failed.
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A byte range of the resource, and how far it has been written.
+     */
+    private static final class Segment {
+
+        private long position;
+
+        private final long last;
+
+        Segment(long first, long last) {
+            this.position = first;
+            this.last = last;
+        }
+    }
+
+    private void fetchSegment(FileChannel channel, Segment segment, Progress progress) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                fetchRange(channel, segment, progress);
+                return;
+            } catch (IOException e) {
+                if (attempt >= SEGMENT_ATTEMPTS || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                // Resume at the first byte the segment is still missing, not at its start.
+            }
+        }
+    }
+
+    /**
+     * Requests the missing bytes of the segment and writes them at the same positions of the landing file. Returns
+     * normally only once the segment is complete.
+     */
+    private void fetchRange(FileChannel channel, Segment segment, Progress progress) throws IOException {
+        long first = segment.position;
+        long last = segment.last;
+
+        HttpURLConnection connection = open(resolvedUrl);
+        try {
+            connection.setRequestProperty("Range", "bytes=" + first + "-" + last);
+            if (entityTag != null) {
+                connection.setRequestProperty("If-Range", entityTag);
+            }
+
+            // A 200 means the server ignored the range, or the resource changed since the probe.
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL
+                    || !String.valueOf(connection.getHeaderField("Content-Range"))
+                            .startsWith("bytes " + first + "-" + last + "/")) {
+                throw new IOException("Server did not serve range " + first + "-" + last + " of " + url
+                        + ", response: " + connection.getResponseCode());
+            }
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            try (InputStream in = connection.getInputStream()) {
+                int read;
+                while (segment.position <= last && (read = in.read(buffer)) != -1) {
+                    int length = (int) Math.min(read, last - segment.position + 1);
+
+                    ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, length);
+                    while (bytes.hasRemaining()) {
+                        segment.position += channel.write(bytes, segment.position);
+                    }
+
+                    synchronized (progress) {
+                        progress.transferred(buffer, length);
+                    }
+
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new IOException("Interrupted while downloading " + url);
+                    }
+                }
+            }
+
+            if (segment.position <= last) {
+                throw new IOException("Connection closed early, range " + first + "-" + last + " of " + url);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection open(URL target) throws IOException {
+        Proxy proxy = Proxy.NO_PROXY;
+        if (proxyInfo != null
+                && proxyInfo.getHost() != null
+                && !ProxyUtils.validateNonProxyHosts(proxyInfo, target.getHost())) {
+            Proxy.Type type = ProxyInfo.PROXY_HTTP.equalsIgnoreCase(proxyInfo.getType())
+                    ? Proxy.Type.HTTP
+                    : Proxy.Type.SOCKS;
+            proxy = new Proxy(type, new InetSocketAddress(proxyInfo.getHost(), proxyInfo.getPort()));
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) target.openConnection(proxy);
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setUseCaches(false);
+
+        if (authenticationInfo != null && authenticationInfo.getUserName() != null) {
+            connection.setRequestProperty(
+                    "Authorization", basic(authenticationInfo.getUserName(), authenticationInfo.getPassword()));
+        }
+
+        if (proxy != Proxy.NO_PROXY && proxyInfo.getUserName() != null) {
+            connection.setRequestProperty(
+                    "Proxy-Authorization", basic(proxyInfo.getUserName(), proxyInfo.getPassword()));
+        }
+
+        return connection;
+    }
+
+    private static boolean isSameOrigin(URL url, URL other) {
+        return url.getProtocol().equalsIgnoreCase(other.getProtocol())
+                && url.getHost().equalsIgnoreCase(other.getHost())
+                && port(url) == port(other);
+    }
+
+    private static int port(URL url) {
+        return (url.getPort() != -1) ? url.getPort() : url.getDefaultPort();
+    }
+
+    private static String basic(String userName, String password) {
+        String credentials = userName + ":" + (password != null ? password : "");
+
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+}
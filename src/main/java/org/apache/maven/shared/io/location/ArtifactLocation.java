@@ -25,12 +25,24 @@ import org.apache.maven.artifact.Artifact;
  */
 public class ArtifactLocation extends FileLocation {
 
+    private final Artifact artifact;
+
     /**
      * @param artifact {@link Artifact}
      * @param specification the specification
      */
     public ArtifactLocation(Artifact artifact, String specification) {
         super(specification);
+        this.artifact = artifact;
         setFile(artifact.getFile());
     }
+
+    /** {@inheritDoc} */
+    @Override
+    protected ArtifactLocation duplicate() {
+        ArtifactLocation duplicate = new ArtifactLocation(artifact, getSpecification());
+        duplicate.setMapped(isMapped());
+
+        return duplicate;
+    }
 }
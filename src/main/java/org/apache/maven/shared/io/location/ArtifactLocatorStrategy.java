@@ -18,8 +18,13 @@
  */
 package org.apache.maven.shared.io.location;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
@@ -98,6 +103,17 @@ public class ArtifactLocatorStrategy implements LocatorStrategy {
         this.defaultClassifier = defaultClassifier;
     }
 
+    /**
+     * {@inheritDoc} Only coordinates, whose group id is neither a URL scheme nor {@code classpath}.
+     */
+    @Override
+    public boolean isApplicable(String scheme) {
+        return scheme != null
+                && !Schemes.isDriveLetter(scheme)
+                && !Schemes.CLASSPATH.equals(scheme)
+                && !Schemes.isUrl(scheme);
+    }
+
     /**
      * Assumes artifact identity is given in a set of comma-delimited tokens of
      * the form: <code>groupId:artifactId:version:type:classifier</code>, where
@@ -170,4 +186,47 @@ public class ArtifactLocatorStrategy implements LocatorStrategy {
 
         return location;
     }
+
+    /**
+     * Resolves many specifications at once, each distinct one once and concurrently, for a set of artifacts whose
+     * resolutions one after another would each wait on the repositories. The {@link ArtifactFactory} and
+     * {@link ArtifactResolver} must be safe to use concurrently, as those of Maven are.
+     *
+     * @param locationSpecifications the specifications, in the form of {@link #resolve(String, MessageHolder)}.
+     * @param executor runs the resolutions, or {@code null} to run them one after another on the calling thread,
+     *            where the first that fails ends them. It is not shut down by this strategy.
+     * @param messageHolder receives the messages of each distinct specification, in the order of the
+     *            specifications, as if they were resolved one after another.
+     * @return a location of its own for each specification, or {@code null} where it was not resolved, in the order
+     *         of the specifications.
+     */
+    public List<Location> resolveAll(
+            List<String> locationSpecifications, ExecutorService executor, MessageHolder messageHolder) {
+        Map<String, Integer> indexes = new LinkedHashMap<>();
+
+        try (ConcurrentResolutions<Location> running = new ConcurrentResolutions<>(executor)) {
+            for (String locationSpecification : locationSpecifications) {
+                if (!indexes.containsKey(locationSpecification)) {
+                    int index = running.submit(holder -> resolve(locationSpecification, holder));
+                    indexes.put(locationSpecification, index);
+                }
+            }
+
+            Map<String, Location> taken = new HashMap<>();
+            List<Location> locations = new ArrayList<>(locationSpecifications.size());
+            for (String locationSpecification : locationSpecifications) {
+                if (taken.containsKey(locationSpecification)) {
+                    Location location = taken.get(locationSpecification);
+                    locations.add((location instanceof FileLocation) ? ((FileLocation) location).duplicate() : null);
+                } else {
+                    // The first occurrence: hand out the location itself, after the messages of its resolution.
+                    Location location = running.take(indexes.get(locationSpecification), messageHolder);
+                    taken.put(locationSpecification, location);
+                    locations.add(location);
+                }
+            }
+
+            return locations;
+        }
+    }
 }
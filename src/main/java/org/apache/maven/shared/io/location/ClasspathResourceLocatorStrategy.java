@@ -18,6 +18,8 @@
  */
 package org.apache.maven.shared.io.location;
 
+import java.io.File;
+import java.net.URISyntaxException;
 import java.net.URL;
 
 import org.apache.maven.shared.io.logging.MessageHolder;
@@ -34,6 +36,8 @@ public class ClasspathResourceLocatorStrategy implements LocatorStrategy {
 
     private boolean tempFileDeleteOnExit = true;
 
+    private boolean inPlace;
+
     /**
      * Create instance.
      */
@@ -51,17 +55,60 @@ public class ClasspathResourceLocatorStrategy implements LocatorStrategy {
         this.tempFileDeleteOnExit = tempFileDeleteOnExit;
     }
 
+    /**
+     * Serves resources where they are instead of copying each into a temp file. A resource in a directory is read
+     * as its file, which {@link Location#getFile()} returns and which must then not be modified. A resource in a
+     * jar is streamed from its entry, and extracted only if {@link Location#getFile()} is called, once per resource
+     * for the JVM, see {@link URLLocation#setSharedCache(boolean)}. A long-lived JVM then no longer writes a temp
+     * file, and registers it for deletion on exit, per lookup.
+     *
+     * @param inPlace whether to serve resources in place, {@code false} by default.
+     */
+    public void setInPlace(boolean inPlace) {
+        this.inPlace = inPlace;
+    }
+
+    /**
+     * {@inheritDoc} Resources are looked up from the context class loader of the calling thread, so they are not.
+     */
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc} Only specifications without a scheme, or with the {@code classpath} scheme.
+     */
+    @Override
+    public boolean isApplicable(String scheme) {
+        return scheme == null || Schemes.CLASSPATH.equals(scheme);
+    }
+
     /** {@inheritDoc} */
     public Location resolve(String locationSpecification, MessageHolder messageHolder) {
         ClassLoader cloader = Thread.currentThread().getContextClassLoader();
 
-        URL resource = cloader.getResource(locationSpecification);
+        String resourceName = locationSpecification;
+        if (resourceName.regionMatches(true, 0, Schemes.CLASSPATH + ":", 0, Schemes.CLASSPATH.length() + 1)) {
+            resourceName = resourceName.substring(Schemes.CLASSPATH.length() + 1);
+            while (resourceName.startsWith("/")) {
+                resourceName = resourceName.substring(1);
+            }
+        }
+
+        URL resource = cloader.getResource(resourceName);
 
         Location location = null;
 
-        if (resource != null) {
-            location = new URLLocation(
+        if (resource != null && inPlace && "file".equals(resource.getProtocol())) {
+            location = new FileLocation(toFile(resource), locationSpecification);
+        } else if (resource != null) {
+            URLLocation urlLocation = new URLLocation(
                     resource, locationSpecification, tempFilePrefix, tempFileSuffix, tempFileDeleteOnExit);
+            urlLocation.setStreaming(inPlace);
+            urlLocation.setSharedCache(inPlace);
+
+            location = urlLocation;
         } else {
             messageHolder.addMessage(
                     "Failed to resolve classpath resource: " + locationSpecification + " from classloader: " + cloader);
@@ -69,4 +116,13 @@ public class ClasspathResourceLocatorStrategy implements LocatorStrategy {
 
         return location;
     }
+
+    private static File toFile(URL resource) {
+        try {
+            return new File(resource.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            // Not a valid URI, such as one with unescaped spaces.
+            return new File(resource.getPath());
+        }
+    }
 }
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.location;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.apache.maven.shared.io.logging.MessageHolder;
+
+/**
+ * Resolutions running concurrently, whose results are taken in the order of choice, each with its messages added to
+ * a holder as if the resolutions had run one after another. Each resolution writes its messages to a holder of its
+ * own, recorded by a {@link MessageReplay}. Without an executor, each resolution runs on the calling thread once its
+ * result is taken, writing to the given holder directly, so the first failure ends the resolutions after it.
+ * Closing cancels the resolutions whose results were not taken. A resolution runs with the context class loader of
+ * the thread that submitted it, which strategies such as {@link ClasspathResourceLocatorStrategy} look up from.
+ *
+ * @param <T> the result of a resolution.
+ */
+final class ConcurrentResolutions<T> implements AutoCloseable {
+
+    private final ExecutorService executor;
+
+    private final List<Function<MessageHolder, T>> resolutions = new ArrayList<>();
+
+    private final List<Future<T>> futures = new ArrayList<>();
+
+    private final List<MessageReplay> replays = new ArrayList<>();
+
+    /**
+     * @param executor runs the resolutions, or {@code null} to run them on the calling thread.
+     */
+    ConcurrentResolutions(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param resolution the resolution, given the holder to write its messages to.
+     * @return the index to take its result by.
+     */
+    int submit(Function<MessageHolder, T> resolution) {
+        resolutions.add(resolution);
+
+        if (executor != null) {
+            MessageReplay replay = new MessageReplay();
+            replays.add(replay);
+            ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+            futures.add(executor.submit(() -> {
+                Thread thread = Thread.currentThread();
+                ClassLoader poolClassLoader = thread.getContextClassLoader();
+                thread.setContextClassLoader(contextClassLoader);
+
+                MessageHolder holder = replay.newMessageHolder();
+                try {
+                    return resolution.apply(holder);
+                } finally {
+                    holder.flush();
+                    thread.setContextClassLoader(poolClassLoader);
+                }
+            }));
+        }
+
+        return resolutions.size() - 1;
+    }
+
+    /**
+     * Waits for the result of a resolution, rethrowing what it threw as it would running on this thread. Take each
+     * result once.
+     *
+     * @param index the index of the resolution.
+     * @param messageHolder receives the messages of the resolution, before the result is returned.
+     * @return the result.
+     */
+    T take(int index, MessageHolder messageHolder) {
+        if (executor == null) {
+            return resolutions.get(index).apply(messageHolder);
+        }
+
+        T result = await(futures.get(index));
+        replays.get(index).replayTo(messageHolder);
+
+        return result;
+    }
+
+    /**
+     * Cancels the resolutions still running, such as those after one that failed.
+     */
+    @Override
+    public void close() {
+        for (Future<T> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while resolving a location.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -24,6 +24,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * file location implementation.
@@ -35,6 +40,25 @@ public class FileLocation implements Location {
     private final String specification;
     private FileInputStream stream;
 
+    /**
+     * The largest region of a file one buffer can map.
+     */
+    static final long MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+    private long windowSize = MAX_WINDOW_SIZE;
+
+    private boolean mapped;
+
+    /**
+     * The mapped regions of the file, in order, once open in mapped mode. Their positions are the read position.
+     */
+    private List<ByteBuffer> windows;
+
+    /**
+     * Index of the window the next read starts in.
+     */
+    private int window;
+
     /**
      * @param file {@link File}
      * @param specification spec.
@@ -51,6 +75,77 @@ public class FileLocation implements Location {
         this.specification = specification;
     }
 
+    /**
+     * Reads through a read-only memory mapping of the file instead of a file channel, once opened. Reads then copy
+     * straight from the page cache, without a system call each, and the mapping shares the page cache with other
+     * threads and processes reading the same file. Files over 2 GB are mapped as several consecutive windows. The
+     * mapping is released when it is garbage collected, not on {@link #close()}, so it suits files read repeatedly
+     * rather than many files read once.
+     *
+     * @param mapped whether to map the file, {@code false} by default.
+     */
+    public void setMapped(boolean mapped) {
+        if (stream != null || windows != null) {
+            throw new IllegalStateException("Location is already open; cannot setMapped(..).");
+        }
+
+        this.mapped = mapped;
+    }
+
+    /**
+     * @return whether the location reads through a memory mapping, see {@link #setMapped(boolean)}.
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * @param windowSize the largest region of the file one buffer maps.
+     */
+    void setWindowSize(long windowSize) {
+        this.windowSize = Math.min(windowSize, MAX_WINDOW_SIZE);
+    }
+
+    /**
+     * Opens the location in {@link #setMapped(boolean) mapped mode} if needed, and returns the whole file as read-only
+     * buffers over its mapping: one, or several consecutive windows for files over 2 GB. The buffers are independent
+     * of each other's and the location's read position.
+     *
+     * @return the buffers, in file order.
+     * @throws IOException in case of an error.
+     * @throws IllegalStateException if the location is not in mapped mode.
+     */
+    public List<ByteBuffer> getMappedBuffers() throws IOException {
+        if (!mapped) {
+            throw new IllegalStateException("Location is not in mapped mode; call setMapped(true) before open().");
+        }
+
+        open();
+
+        List<ByteBuffer> buffers = new ArrayList<>(windows.size());
+        for (ByteBuffer mapping : windows) {
+            ByteBuffer buffer = mapping.duplicate();
+            buffer.clear();
+            buffers.add(buffer);
+        }
+
+        return Collections.unmodifiableList(buffers);
+    }
+
+    /**
+     * Creates an unopened location of the same content and configuration, for a {@link Locator} to hand out a
+     * resolution again without sharing the read state. Subclasses override it to return their own type.
+     *
+     * @return the new location.
+     */
+    protected FileLocation duplicate() {
+        FileLocation duplicate = new FileLocation(file, specification);
+        duplicate.mapped = mapped;
+        duplicate.windowSize = windowSize;
+
+        return duplicate;
+    }
+
     /** {@inheritDoc} */
     public void close() {
         if ((channel != null) && channel.isOpen()) {
@@ -68,6 +163,9 @@ public class FileLocation implements Location {
                 // swallow it.
             }
         }
+
+        windows = null;
+        window = 0;
     }
 
     /** {@inheritDoc} */
@@ -113,7 +211,14 @@ public class FileLocation implements Location {
 
     /** {@inheritDoc} */
     public void open() throws IOException {
-        if (stream == null) {
+        if (mapped) {
+            if (windows == null) {
+                initFile();
+
+                windows = map(file, windowSize);
+                window = 0;
+            }
+        } else if (stream == null) {
             initFile();
 
             stream = new FileInputStream(file);
@@ -121,21 +226,141 @@ public class FileLocation implements Location {
         }
     }
 
+    private static List<ByteBuffer> map(File file, long windowSize) throws IOException {
+        try (FileChannel mapping = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = mapping.size();
+
+            List<ByteBuffer> windows = new ArrayList<>((int) (size / windowSize) + 1);
+            for (long position = 0; position < size || windows.isEmpty(); position += windowSize) {
+                long length = Math.min(windowSize, size - position);
+                windows.add(mapping.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
+
+            // The mapping stays valid once the channel is closed.
+            return windows;
+        }
+    }
+
     /** {@inheritDoc} */
     public int read(ByteBuffer buffer) throws IOException {
         open();
-        return channel.read(buffer);
+        return mapped ? readMapped(buffer) : channel.read(buffer);
     }
 
     /** {@inheritDoc} */
     public int read(byte[] buffer) throws IOException {
         open();
-        return channel.read(ByteBuffer.wrap(buffer));
+        return mapped ? readMapped(ByteBuffer.wrap(buffer)) : channel.read(ByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * Copies from the mapped windows at the read position, across windows if needed.
+     *
+     * @return the number of bytes copied, or -1 at the end of the file.
+     */
+    private int readMapped(ByteBuffer buffer) {
+        int total = 0;
+
+        while (buffer.hasRemaining() && window < windows.size()) {
+            ByteBuffer source = windows.get(window);
+            if (!source.hasRemaining()) {
+                window++;
+                continue;
+            }
+
+            int length = Math.min(source.remaining(), buffer.remaining());
+            ByteBuffer slice = source.duplicate();
+            slice.limit(slice.position() + length);
+            buffer.put(slice);
+            source.position(source.position() + length);
+            total += length;
+        }
+
+        return (total == 0 && buffer.hasRemaining()) ? -1 : total;
+    }
+
+    /**
+     * {@inheritDoc} The bytes move with {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which the
+     * operating system can carry out without copying them into this process, such as with {@code sendfile} on Linux.
+     * In mapped mode, they are written straight from the mapping.
+     */
+    @Override
+    public long transferTo(WritableByteChannel target) throws IOException {
+        open();
+
+        long total = 0;
+
+        if (mapped) {
+            for (; window < windows.size(); window++) {
+                ByteBuffer source = windows.get(window);
+                while (source.hasRemaining()) {
+                    int written = target.write(source);
+                    if (written == 0) {
+                        // The target takes no more bytes. A later read goes on from the first byte not written.
+                        return total;
+                    }
+                    total += written;
+                }
+            }
+
+            return total;
+        }
+
+        long size = channel.size();
+        long position = channel.position();
+
+        while (position < size) {
+            long transferred = channel.transferTo(position, size - position, target);
+            if (transferred == 0) {
+                // The file shrank since its size was read, or the target takes no more bytes.
+                break;
+            }
+            position += transferred;
+            total += transferred;
+        }
+
+        channel.position(position);
+
+        return total;
     }
 
     /** {@inheritDoc} */
     public InputStream getInputStream() throws IOException {
         open();
-        return stream;
+        return mapped ? new MappedInputStream() : stream;
+    }
+
+    /**
+     * Reads from the mapped windows, sharing the read position with {@link #read(ByteBuffer)}.
+     */
+    private final class MappedInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+
+            return (read(single, 0, 1) == -1) ? -1 : (single[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (windows == null) {
+                throw new IOException("Location is closed.");
+            }
+
+            return readMapped(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public int available() {
+            long available = 0;
+            if (windows != null) {
+                for (int i = window; i < windows.size(); i++) {
+                    available += windows.get(i).remaining();
+                }
+            }
+
+            return (int) Math.min(available, Integer.MAX_VALUE);
+        }
     }
 }
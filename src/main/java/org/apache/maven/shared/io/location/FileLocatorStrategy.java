@@ -28,6 +28,16 @@ import org.apache.maven.shared.io.logging.MessageHolder;
  */
 public class FileLocatorStrategy implements LocatorStrategy {
 
+    /**
+     * {@inheritDoc} Only specifications without a scheme, or with a drive letter on Windows. A relative path with a
+     * colon before its first separator, such as {@code a:b.txt} or {@code lib:v2/file.txt}, reads as a scheme and is
+     * left to the other strategies; prefix it with {@code ./} to resolve it as a file.
+     */
+    @Override
+    public boolean isApplicable(String scheme) {
+        return scheme == null || Schemes.isDriveLetter(scheme);
+    }
+
     /** {@inheritDoc} */
     public Location resolve(String locationSpecification, MessageHolder messageHolder) {
         File file = new File(locationSpecification);
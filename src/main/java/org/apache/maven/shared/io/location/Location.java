@@ -22,6 +22,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * The location interface.
@@ -65,6 +69,34 @@ public interface Location {
      */
     InputStream getInputStream() throws IOException;
 
+    /**
+     * Writes the bytes from the read position to the end of the location to the channel, opening the location if
+     * needed. This default implementation copies them through a buffer with {@link #read(ByteBuffer)}.
+     *
+     * @param target the channel, which is left open.
+     * @return the number of bytes written.
+     * @throws IOException in case of an error.
+     */
+    default long transferTo(WritableByteChannel target) throws IOException {
+        open();
+
+        return Transfers.copy(this::read, target);
+    }
+
+    /**
+     * Writes the bytes from the read position to the end of the location to a file, replacing its content.
+     *
+     * @param target the file.
+     * @return the number of bytes written.
+     * @throws IOException in case of an error.
+     */
+    default long copyTo(Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+                target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return transferTo(channel);
+        }
+    }
+
     /**
      * @return spec.
      */
@@ -19,8 +19,14 @@
 package org.apache.maven.shared.io.location;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.maven.shared.io.logging.DefaultMessageHolder;
 import org.apache.maven.shared.io.logging.MessageHolder;
@@ -33,6 +39,32 @@ public final class Locator {
     private List<LocatorStrategy> strategies;
     private final MessageHolder messageHolder;
 
+    private boolean caching;
+
+    /**
+     * How long a cached resolution is handed out, 0 until it is invalidated.
+     */
+    private long cacheTtlNanos;
+
+    /**
+     * Cached resolutions by specification.
+     */
+    private final Map<String, Resolution> resolutions = new ConcurrentHashMap<>();
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
+    /**
+     * Runs the strategies of one resolution concurrently, or {@code null} to run them one after another.
+     */
+    private ExecutorService strategyExecutor;
+
+    /**
+     * The strategies applicable to each scheme, for the strategies it was built from.
+     */
+    private volatile Dispatch dispatch;
+
     /**
      * @param strategies List of strategies.
      * @param messageHolder {@link MessageHolder}
@@ -62,6 +94,7 @@ public final class Locator {
      */
     public void addStrategy(LocatorStrategy strategy) {
         this.strategies.add(strategy);
+        resolutions.clear();
     }
 
     /**
@@ -69,6 +102,7 @@ public final class Locator {
      */
     public void removeStrategy(LocatorStrategy strategy) {
         this.strategies.remove(strategy);
+        resolutions.clear();
     }
 
     /**
@@ -77,6 +111,7 @@ public final class Locator {
     public void setStrategies(List<LocatorStrategy> strategies) {
         this.strategies.clear();
         this.strategies.addAll(strategies);
+        resolutions.clear();
     }
 
     /**
@@ -86,19 +121,295 @@ public final class Locator {
         return strategies;
     }
 
+    /**
+     * Runs the strategies of a resolution concurrently instead of one after another, so a slow strategy, such as one
+     * asking a remote repository, no longer delays the ones after it. The result is the same: the location of the
+     * first strategy in order that resolves one, with the messages of that strategy and the ones before it, in
+     * order. Once a strategy resolved a location, the strategies after it are cancelled, which interrupts them if
+     * they already run. Strategies must then be safe to run concurrently. They run with the context class loader of
+     * the calling thread.
+     *
+     * @param executor runs the strategies, or {@code null} to run them one after another, the default. It is not
+     *            shut down by the locator.
+     */
+    public void setConcurrentStrategies(ExecutorService executor) {
+        this.strategyExecutor = executor;
+    }
+
+    /**
+     * Remembers the locations resolved by {@link LocatorStrategy#isCacheable() cacheable} strategies, so resolving the
+     * same specification again hands out a fresh duplicate of the location instead of asking the strategies again.
+     * Only {@link FileLocation}s, which can be {@link FileLocation#duplicate() duplicated}, are cached, and failed
+     * resolutions are not. A cache hit adds no messages. Changing the strategies, including through the list of
+     * {@link #getStrategies()}, empties the cache.
+     *
+     * @param caching whether to cache resolutions, {@code false} by default. Turning it off empties the cache.
+     * @param ttl how long a resolution is handed out before the strategies are asked again, or 0 until it is
+     *            {@link #invalidate(String) invalidated}.
+     * @param unit the unit of the time to live.
+     */
+    public void setResolutionCache(boolean caching, long ttl, TimeUnit unit) {
+        this.caching = caching;
+        this.cacheTtlNanos = Math.max(0, unit.toNanos(ttl));
+
+        if (!caching) {
+            resolutions.clear();
+        }
+    }
+
+    /**
+     * Forgets the cached resolution of a specification, such as after the resource it names changed.
+     *
+     * @param locationSpecification location spec.
+     */
+    public void invalidate(String locationSpecification) {
+        resolutions.remove(locationSpecification);
+    }
+
+    /**
+     * Forgets all cached resolutions.
+     */
+    public void invalidateAll() {
+        resolutions.clear();
+    }
+
+    /**
+     * @return how many resolutions were handed out from the cache.
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * @return how many resolutions the cache could not serve while caching, whether their result was cached or not.
+     */
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
     /**
      * @param locationSpecification location spec.
      * @return {@link Location}
      */
     public Location resolve(String locationSpecification) {
+        return resolve(locationSpecification, messageHolder);
+    }
+
+    /**
+     * Resolves many specifications concurrently. Each resolution gets a message holder of its own, instead of the
+     * one of this locator, so their messages do not interleave. The strategies must be safe to run concurrently, and
+     * run with the context class loader of the calling thread.
+     *
+     * @param locationSpecifications the specifications.
+     * @param executor runs the resolutions, or {@code null} to run them one after another on the calling thread. It
+     *            must not be the executor of {@link #setConcurrentStrategies(ExecutorService)} if that one is bounded,
+     *            as a resolution waits for its strategies. It is not shut down by the locator.
+     * @return the results, in the order of the specifications.
+     */
+    public List<Result> resolveAll(Collection<String> locationSpecifications, ExecutorService executor) {
+        List<Result> results = new ArrayList<>(locationSpecifications.size());
+
+        try (ConcurrentResolutions<Location> running = new ConcurrentResolutions<>(executor)) {
+            for (String locationSpecification : locationSpecifications) {
+                running.submit(holder -> resolve(locationSpecification, holder));
+            }
+
+            int index = 0;
+            for (String locationSpecification : locationSpecifications) {
+                MessageHolder holder = new DefaultMessageHolder();
+                results.add(new Result(locationSpecification, running.take(index++, holder), holder));
+            }
+
+            return results;
+        }
+    }
+
+    /**
+     * The outcome of resolving one specification with {@link #resolveAll(Collection, ExecutorService)}.
+     */
+    public static final class Result {
+
+        private final String specification;
+
+        private final Location location;
+
+        private final MessageHolder messageHolder;
+
+        Result(String specification, Location location, MessageHolder messageHolder) {
+            this.specification = specification;
+            this.location = location;
+            this.messageHolder = messageHolder;
+        }
+
+        /**
+         * @return the specification.
+         */
+        public String getSpecification() {
+            return specification;
+        }
+
+        /**
+         * @return the location, or {@code null} if no strategy resolved the specification.
+         */
+        public Location getLocation() {
+            return location;
+        }
+
+        /**
+         * @return the messages of this resolution only.
+         */
+        public MessageHolder getMessageHolder() {
+            return messageHolder;
+        }
+    }
+
+    private Location resolve(String locationSpecification, MessageHolder messageHolder) {
+        Dispatch current = dispatch();
+
+        if (caching) {
+            Resolution cached = resolutions.get(locationSpecification);
+            // Resolved by other strategies if the list handed out by getStrategies() changed since.
+            if (cached != null && cached.dispatch == current && !cached.isExpired(cacheTtlNanos)) {
+                cacheHits.increment();
+
+                return cached.location.duplicate();
+            }
+
+            cacheMisses.increment();
+
+            if (cached != null) {
+                resolutions.remove(locationSpecification, cached);
+            }
+        }
+
+        List<LocatorStrategy> candidates = current.forScheme(Schemes.of(locationSpecification));
+
+        ExecutorService executor = strategyExecutor;
+        if (executor != null && candidates.size() > 1) {
+            return race(locationSpecification, candidates, messageHolder, executor, current);
+        }
+
         Location location = null;
 
-        for (Iterator<LocatorStrategy> it = strategies.iterator(); location == null && it.hasNext(); ) {
+        for (Iterator<LocatorStrategy> it = candidates.iterator(); location == null && it.hasNext(); ) {
             LocatorStrategy strategy = (LocatorStrategy) it.next();
 
             location = strategy.resolve(locationSpecification, messageHolder);
+
+            cache(locationSpecification, strategy, location, current);
         }
 
         return location;
     }
+
+    /**
+     * @return the dispatch of the current strategies.
+     */
+    private Dispatch dispatch() {
+        // The strategies list is handed out by getStrategies(), so it may change behind our back.
+        Dispatch current = dispatch;
+        if (current == null || !current.strategies.equals(strategies)) {
+            current = new Dispatch(new ArrayList<>(strategies));
+            dispatch = current;
+        }
+
+        return current;
+    }
+
+    /**
+     * The strategies applicable to each scheme, decided once per scheme.
+     */
+    private static final class Dispatch {
+
+        /**
+         * Schemes remembered at most, as specifications such as artifact coordinates have a scheme per group.
+         */
+        private static final int MAX_SCHEMES = 256;
+
+        private final List<LocatorStrategy> strategies;
+
+        private final Map<String, List<LocatorStrategy>> byScheme = new ConcurrentHashMap<>();
+
+        Dispatch(List<LocatorStrategy> strategies) {
+            this.strategies = strategies;
+        }
+
+        List<LocatorStrategy> forScheme(String scheme) {
+            // A concurrent map takes no null key.
+            String key = (scheme != null) ? scheme : "";
+
+            List<LocatorStrategy> applicable = byScheme.get(key);
+            if (applicable == null) {
+                applicable = new ArrayList<>(strategies.size());
+                for (LocatorStrategy strategy : strategies) {
+                    if (strategy.isApplicable(scheme)) {
+                        applicable.add(strategy);
+                    }
+                }
+
+                if (byScheme.size() < MAX_SCHEMES) {
+                    byScheme.put(key, applicable);
+                }
+            }
+
+            return applicable;
+        }
+    }
+
+    private void cache(String locationSpecification, LocatorStrategy strategy, Location location, Dispatch dispatch) {
+        if (caching && location instanceof FileLocation && strategy.isCacheable()) {
+            // Cache a duplicate, so later hits do not share the read state of the location handed out now.
+            resolutions.put(locationSpecification, new Resolution(((FileLocation) location).duplicate(), dispatch));
+        }
+    }
+
+    /**
+     * Runs all strategies concurrently, each with a message holder of its own, and takes their results in order.
+     */
+    private Location race(
+            String locationSpecification,
+            List<LocatorStrategy> candidates,
+            MessageHolder messageHolder,
+            ExecutorService executor,
+            Dispatch dispatch) {
+        // Closing cancels the strategies after the one that resolved, the others are done.
+        try (ConcurrentResolutions<Location> running = new ConcurrentResolutions<>(executor)) {
+            for (LocatorStrategy strategy : candidates) {
+                running.submit(holder -> strategy.resolve(locationSpecification, holder));
+            }
+
+            for (int i = 0; i < candidates.size(); i++) {
+                Location location = running.take(i, messageHolder);
+
+                if (location != null) {
+                    cache(locationSpecification, candidates.get(i), location, dispatch);
+
+                    return location;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * A cached location, never opened itself, when it was resolved, and by the strategies of which dispatch.
+     */
+    private static final class Resolution {
+
+        private final FileLocation location;
+
+        private final Dispatch dispatch;
+
+        private final long resolvedAt = System.nanoTime();
+
+        Resolution(FileLocation location, Dispatch dispatch) {
+            this.location = location;
+            this.dispatch = dispatch;
+        }
+
+        boolean isExpired(long ttlNanos) {
+            return ttlNanos > 0 && System.nanoTime() - resolvedAt > ttlNanos;
+        }
+    }
 }
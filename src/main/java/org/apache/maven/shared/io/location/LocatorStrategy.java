@@ -31,4 +31,27 @@ public interface LocatorStrategy {
      * @return {@link Location}
      */
     Location resolve(String locationSpecification, MessageHolder messageHolder);
+
+    /**
+     * Whether a {@link Locator} with a resolution cache may hand out a location this strategy resolved again for
+     * the same specification, instead of asking the strategy again. A strategy whose result depends on more than the
+     * specification, such as on the calling thread, is not cacheable.
+     *
+     * @return {@code true} by default.
+     */
+    default boolean isCacheable() {
+        return true;
+    }
+
+    /**
+     * Whether this strategy may resolve specifications of a scheme, so a {@link Locator} asks only the strategies
+     * that may, without any I/O or exception for the others. A locator decides once per scheme.
+     *
+     * @param scheme the part of the specification before its first ':' in lower case, such as {@code http},
+     *            {@code classpath} or a group id, or {@code null} if there is none.
+     * @return {@code true} by default.
+     */
+    default boolean isApplicable(String scheme) {
+        return true;
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.location;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.shared.io.logging.DefaultMessageHolder;
+import org.apache.maven.shared.io.logging.MessageHolder;
+import org.apache.maven.shared.io.logging.MessageLevels;
+import org.apache.maven.shared.io.logging.MessageSink;
+
+/**
+ * Records the messages of a resolution running on another thread, to add them to the shared {@link MessageHolder}
+ * later, in the order the resolutions would have run one after another. A {@link DefaultMessageHolder} is not safe
+ * for concurrent use, so each concurrent resolution writes to a {@link #newMessageHolder() holder of its own}.
+ */
+final class MessageReplay implements MessageSink {
+
+    private final List<Integer> levels = new ArrayList<>();
+
+    private final List<String> messages = new ArrayList<>();
+
+    /**
+     * @return a holder recording every message into this replay once the next message starts, or on
+     *         {@link MessageHolder#flush()}.
+     */
+    MessageHolder newMessageHolder() {
+        return new DefaultMessageHolder(MessageLevels.LEVEL_DEBUG, MessageLevels.LEVEL_INFO, this);
+    }
+
+    /**
+     * Adds the recorded messages to the holder, each at the level it was recorded with.
+     *
+     * @param messageHolder {@link MessageHolder}
+     */
+    synchronized void replayTo(MessageHolder messageHolder) {
+        for (int i = 0; i < messages.size(); i++) {
+            String message = messages.get(i);
+
+            switch (levels.get(i)) {
+                case MessageLevels.LEVEL_SEVERE:
+                    messageHolder.addSevereMessage(message);
+                    break;
+                case MessageLevels.LEVEL_ERROR:
+                    messageHolder.addErrorMessage(message);
+                    break;
+                case MessageLevels.LEVEL_WARNING:
+                    messageHolder.addWarningMessage(message);
+                    break;
+                case MessageLevels.LEVEL_INFO:
+                    messageHolder.addInfoMessage(message);
+                    break;
+                default:
+                    messageHolder.addDebugMessage(message);
+            }
+        }
+    }
+
+    private synchronized void record(int level, String message) {
+        levels.add(level);
+        messages.add(message);
+    }
+
+    /** {@inheritDoc} */
+    public void debug(String message) {
+        record(MessageLevels.LEVEL_DEBUG, message);
+    }
+
+    /** {@inheritDoc} */
+    public void info(String message) {
+        record(MessageLevels.LEVEL_INFO, message);
+    }
+
+    /** {@inheritDoc} */
+    public void warning(String message) {
+        record(MessageLevels.LEVEL_WARNING, message);
+    }
+
+    /** {@inheritDoc} */
+    public void error(String message) {
+        record(MessageLevels.LEVEL_ERROR, message);
+    }
+
+    /** {@inheritDoc} */
+    public void severe(String message) {
+        record(MessageLevels.LEVEL_SEVERE, message);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.location;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tells the scheme of a location specification apart cheaply, for {@link LocatorStrategy#isApplicable(String)}.
+ */
+final class Schemes {
+
+    /**
+     * The scheme of the resources on the class path.
+     */
+    static final String CLASSPATH = "classpath";
+
+    /**
+     * Schemes remembered at most, as specifications such as artifact coordinates have a scheme per group.
+     */
+    private static final int MAX_REMEMBERED = 1024;
+
+    /**
+     * Whether the JVM has a URL handler, by scheme.
+     */
+    private static final Map<String, Boolean> URL_SCHEMES = new ConcurrentHashMap<>();
+
+    private Schemes() {}
+
+    /**
+     * @param locationSpecification the specification.
+     * @return the part before its first ':' in lower case, or {@code null} if there is none or it contains a path
+     *         separator.
+     */
+    static String of(String locationSpecification) {
+        int colon = locationSpecification.indexOf(':');
+        if (colon < 1) {
+            return null;
+        }
+
+        for (int i = 0; i < colon; i++) {
+            char c = locationSpecification.charAt(i);
+            if (c == '/' || c == '\\') {
+                return null;
+            }
+        }
+
+        return locationSpecification.substring(0, colon).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param scheme a scheme, or {@code null}.
+     * @return whether the JVM can open URLs of the scheme, such as {@code file}, {@code http} or {@code jar}.
+     */
+    static boolean isUrl(String scheme) {
+        if (scheme == null) {
+            return false;
+        }
+
+        Boolean known = URL_SCHEMES.get(scheme);
+        if (known == null) {
+            known = hasUrlHandler(scheme);
+            if (URL_SCHEMES.size() < MAX_REMEMBERED) {
+                URL_SCHEMES.put(scheme, known);
+            }
+        }
+
+        return known;
+    }
+
+    private static boolean hasUrlHandler(String scheme) {
+        try {
+            new URL(scheme, "", -1, "/");
+            return true;
+        } catch (MalformedURLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param scheme a scheme, or {@code null}.
+     * @return whether it is a drive letter of a Windows path rather than a scheme, which it can only be on Windows.
+     */
+    static boolean isDriveLetter(String scheme) {
+        return File.separatorChar == '\\' && scheme != null && scheme.length() == 1;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.location;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Copies bytes through a buffer, for the locations that cannot hand them to the target channel directly.
+ */
+final class Transfers {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Reads bytes into a buffer, as {@link java.nio.channels.ReadableByteChannel#read(ByteBuffer)} does.
+     */
+    interface Source {
+
+        int read(ByteBuffer buffer) throws IOException;
+    }
+
+    private Transfers() {}
+
+    /**
+     * @param source the bytes, read until it returns -1.
+     * @param target the channel, which is left open.
+     * @return the number of bytes written.
+     * @throws IOException in case of an error.
+     */
+    static long copy(Source source, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long total = 0;
+
+        int read;
+        while ((read = source.read(buffer)) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            buffer.clear();
+            total += read;
+        }
+
+        return total;
+    }
+}
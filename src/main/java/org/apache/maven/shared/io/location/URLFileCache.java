@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.location;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Temp file copies of URLs shared by all {@link URLLocation}s of the JVM, so a URL resolved by several locators, such
+ * as one per module of a reactor, is downloaded once. Every use revalidates the copy: HTTP URLs with a conditional
+ * {@code If-Modified-Since} request answered by {@code 304 Not Modified}, other URLs by comparing their modification
+ * time. A URL without a modification time is downloaded again each time.
+ * <p>
+ * The cache keeps the most recently used URLs up to its capacity. A file it handed out is never modified or deleted
+ * while the JVM runs, as its callers may still read it: a changed URL is downloaded to a new file, and an evicted URL
+ * forgets its file. All files are deleted when the JVM exits.
+ */
+final class URLFileCache {
+
+    private static final URLFileCache SHARED = new URLFileCache(256);
+
+    private final int capacity;
+
+    private final Map<String, Copy> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param capacity the number of URLs kept.
+     */
+    URLFileCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the cache shared by the JVM.
+     */
+    static URLFileCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * The copy of one URL. Its lock is held while it is revalidated or downloaded, so concurrent uses of the same
+     * URL download it once.
+     */
+    private static final class Copy {
+
+        private File file;
+
+        private long lastModified;
+
+        private boolean evicted;
+
+        synchronized void evict() {
+            evicted = true;
+            file = null;
+        }
+    }
+
+    /**
+     * @param url the URL.
+     * @param tempFilePrefix the prefix of a new copy.
+     * @param tempFileSuffix the suffix of a new copy.
+     * @return an up to date copy of the URL.
+     * @throws IOException if the URL cannot be revalidated or downloaded.
+     */
+    File get(URL url, String tempFilePrefix, String tempFileSuffix) throws IOException {
+        while (true) {
+            Copy entry;
+            Copy evicted = null;
+            synchronized (entries) {
+                // URL.equals resolves host names, the external form does not.
+                entry = entries.computeIfAbsent(url.toExternalForm(), key -> new Copy());
+
+                if (entries.size() > capacity) {
+                    Iterator<Copy> eldest = entries.values().iterator();
+                    evicted = eldest.next();
+                    eldest.remove();
+                }
+            }
+
+            if (evicted != null) {
+                evicted.evict();
+            }
+
+            synchronized (entry) {
+                // Evicted by another thread while this one waited for it, so it is no longer cached.
+                if (!entry.evicted) {
+                    return get(entry, url, tempFilePrefix, tempFileSuffix);
+                }
+            }
+        }
+    }
+
+    private static File get(Copy entry, URL url, String tempFilePrefix, String tempFileSuffix) throws IOException {
+        boolean cached = entry.file != null && entry.file.exists() && entry.lastModified > 0;
+
+        URLConnection connection = url.openConnection();
+        if (cached) {
+            connection.setIfModifiedSince(entry.lastModified);
+        }
+
+        if (cached && isUnmodified(connection, entry.lastModified)) {
+            return entry.file;
+        }
+
+        File download = Files.createTempFile(tempFilePrefix, tempFileSuffix).toFile();
+        download.deleteOnExit();
+        try (InputStream in = connection.getInputStream()) {
+            Files.copy(in, download.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            download.delete();
+            throw e;
+        }
+
+        // The previous file, if any, is left to whoever still reads it.
+        entry.file = download;
+        entry.lastModified = connection.getLastModified();
+
+        return entry.file;
+    }
+
+    private static boolean isUnmodified(URLConnection connection, long lastModified) throws IOException {
+        if (connection instanceof HttpURLConnection) {
+            return ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+        }
+
+        if (connection.getLastModified() != lastModified) {
+            return false;
+        }
+
+        // Some connections, such as to files, open the content to read its modification time.
+        connection.getInputStream().close();
+
+        return true;
+    }
+
+    /**
+     * @return the number of URLs kept.
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
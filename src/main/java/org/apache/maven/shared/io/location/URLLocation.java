@@ -20,7 +20,12 @@ package org.apache.maven.shared.io.location;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 
 import org.apache.commons.io.FileUtils;
@@ -38,6 +43,17 @@ public class URLLocation extends FileLocation {
 
     private final boolean tempFileDeleteOnExit;
 
+    private boolean sharedCache;
+
+    private boolean streaming;
+
+    /**
+     * The connection reads come from in streaming mode, once open.
+     */
+    private InputStream urlStream;
+
+    private ReadableByteChannel urlChannel;
+
     /**
      * @param url the URL
      * @param specification the spec
@@ -55,9 +71,110 @@ public class URLLocation extends FileLocation {
         this.tempFileDeleteOnExit = tempFileDeleteOnExit;
     }
 
+    /**
+     * Takes the temp file copy from a cache shared by the JVM, revalidated on each use, instead of downloading the
+     * URL into a temp file of its own. The shared copy must not be modified or deleted.
+     *
+     * @param sharedCache whether to use the shared cache, {@code false} by default.
+     */
+    public void setSharedCache(boolean sharedCache) {
+        this.sharedCache = sharedCache;
+    }
+
+    /**
+     * Reads straight from a connection to the URL instead of from a temp file copy, which is then only created if
+     * {@link #getFile()} is called. A caller reading the content once, or only its start, then needs neither the full
+     * download nor the disk write and read. A location opened after {@link #getFile()} reads the temp file.
+     *
+     * @param streaming whether to stream, {@code false} by default.
+     */
+    public void setStreaming(boolean streaming) {
+        if (urlStream != null) {
+            throw new IllegalStateException("Location is already open; cannot setStreaming(..).");
+        }
+
+        this.streaming = streaming;
+    }
+
+    /**
+     * {@inheritDoc} The duplicate reuses the temp file copy, if it was already made.
+     */
+    @Override
+    protected URLLocation duplicate() {
+        URLLocation duplicate =
+                new URLLocation(url, getSpecification(), tempFilePrefix, tempFileSuffix, tempFileDeleteOnExit);
+        duplicate.setFile(unsafeGetFile());
+        duplicate.setMapped(isMapped());
+        duplicate.sharedCache = sharedCache;
+        duplicate.streaming = streaming;
+
+        return duplicate;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void open() throws IOException {
+        if (urlStream == null && streaming && unsafeGetFile() == null) {
+            urlStream = url.openStream();
+            urlChannel = Channels.newChannel(urlStream);
+        }
+
+        if (urlStream == null) {
+            super.open();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        open();
+        return (urlStream != null) ? urlChannel.read(buffer) : super.read(buffer);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(byte[] buffer) throws IOException {
+        return read(ByteBuffer.wrap(buffer));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public InputStream getInputStream() throws IOException {
+        open();
+        return (urlStream != null) ? urlStream : super.getInputStream();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long transferTo(WritableByteChannel target) throws IOException {
+        open();
+
+        if (urlStream == null) {
+            return super.transferTo(target);
+        }
+
+        return Transfers.copy(urlChannel::read, target);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        if (urlStream != null) {
+            try {
+                urlStream.close();
+            } catch (IOException e) {
+                // swallow it.
+            }
+        }
+
+        super.close();
+    }
+
     /** {@inheritDoc} */
     protected void initFile() throws IOException {
-        if (unsafeGetFile() == null) {
+        if (unsafeGetFile() == null && sharedCache) {
+            setFile(URLFileCache.getShared().get(url, tempFilePrefix, tempFileSuffix));
+        } else if (unsafeGetFile() == null) {
             File tempFile = Files.createTempFile(tempFilePrefix, tempFileSuffix).toFile();
 
             if (tempFileDeleteOnExit) {
@@ -34,6 +34,8 @@ public class URLLocatorStrategy implements LocatorStrategy {
 
     private boolean tempFileDeleteOnExit = true;
 
+    private boolean sharedCache;
+
     /**
      * Create instance.
      */
@@ -50,6 +52,22 @@ public class URLLocatorStrategy implements LocatorStrategy {
         this.tempFileDeleteOnExit = tempFileDeleteOnExit;
     }
 
+    /**
+     * @param sharedCache whether the locations take their file from the cache shared by the JVM, see
+     *            {@link URLLocation#setSharedCache(boolean)}.
+     */
+    public void setSharedCache(boolean sharedCache) {
+        this.sharedCache = sharedCache;
+    }
+
+    /**
+     * {@inheritDoc} Only specifications with a scheme the JVM has a URL handler for.
+     */
+    @Override
+    public boolean isApplicable(String scheme) {
+        return Schemes.isUrl(scheme);
+    }
+
     /** {@inheritDoc} */
     public Location resolve(String locationSpecification, MessageHolder messageHolder) {
         Location location = null;
@@ -57,8 +75,11 @@ public class URLLocatorStrategy implements LocatorStrategy {
         try {
             URL url = new URL(locationSpecification);
 
-            location =
+            URLLocation urlLocation =
                     new URLLocation(url, locationSpecification, tempFilePrefix, tempFileSuffix, tempFileDeleteOnExit);
+            urlLocation.setSharedCache(sharedCache);
+
+            location = urlLocation;
         } catch (MalformedURLException e) {
             messageHolder.addMessage("Building URL from location: " + locationSpecification, e);
         }
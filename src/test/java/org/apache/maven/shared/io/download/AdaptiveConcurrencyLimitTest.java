@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimitTest {
+
+    @Test
+    void shouldNotHandOutMorePermitsThanTheLimit() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 8);
+
+        assertTrue(limit.acquire(0, TimeUnit.MILLISECONDS));
+        assertTrue(limit.acquire(0, TimeUnit.MILLISECONDS));
+        assertFalse(limit.acquire(10, TimeUnit.MILLISECONDS));
+        assertEquals(2, limit.getInFlight());
+    }
+
+    @Test
+    void shouldGrowWhileSaturatedAndLatencyStaysFlat() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 4);
+
+        for (int round = 0; round < 50; round++) {
+            int permits = limit.getLimit();
+            for (int i = 0; i < permits; i++) {
+                assertTrue(limit.acquire(0, TimeUnit.MILLISECONDS));
+            }
+            for (int i = 0; i < permits; i++) {
+                limit.release(1000, false);
+            }
+        }
+
+        assertEquals(4, limit.getLimit(), "grows up to, but not past, the maximum");
+    }
+
+    @Test
+    void shouldNotGrowWhenThePermitsAreNotAllUsed() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 16);
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limit.acquire(0, TimeUnit.MILLISECONDS));
+            limit.release(1000, false);
+        }
+
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    void shouldHalveOnFailure() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 16);
+
+        assertTrue(limit.acquire(0, TimeUnit.MILLISECONDS));
+        limit.release(1000, true);
+
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    void shouldReturnAbandonedPermitsWithoutAdapting() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 16);
+
+        assertTrue(limit.acquire(0, TimeUnit.MILLISECONDS));
+        limit.abandon();
+
+        assertEquals(1, limit.getLimit());
+        assertEquals(0, limit.getInFlight());
+        assertTrue(limit.acquire(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void shouldBackOffOnLatencySpikeButNeverBelowOne() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 16);
+
+        assertTrue(limit.acquire(0, TimeUnit.MILLISECONDS));
+        limit.release(1000, false);
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limit.acquire(0, TimeUnit.MILLISECONDS));
+            limit.release(100000, false);
+        }
+
+        assertEquals(1, limit.getLimit());
+    }
+
+    @Test
+    void shouldWakeUpWaiterWhenPermitIsReleased() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 1);
+        assertTrue(limit.acquire(0, TimeUnit.MILLISECONDS));
+
+        Thread releaser = new Thread(() -> limit.release(1000, false));
+        releaser.start();
+
+        assertTrue(limit.acquire(10, TimeUnit.SECONDS));
+        releaser.join();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArchiveExtractorTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("extract");
+    }
+
+    @AfterEach
+    void tearDown() {
+        FileUtils.deleteQuietly(directory.toFile());
+    }
+
+    @Test
+    void shouldDetectFormatByExtension() {
+        assertEquals(ArchiveExtractor.Format.ZIP, ArchiveExtractor.Format.of("/dist/app-1.0.ZIP"));
+        assertEquals(ArchiveExtractor.Format.ZIP, ArchiveExtractor.Format.of("/repo/lib-1.0.jar"));
+        assertEquals(ArchiveExtractor.Format.TAR_GZ, ArchiveExtractor.Format.of("/dist/app-1.0.tar.gz"));
+        assertEquals(ArchiveExtractor.Format.TAR_GZ, ArchiveExtractor.Format.of("/dist/app-1.0.tgz"));
+        assertEquals(ArchiveExtractor.Format.TAR, ArchiveExtractor.Format.of("/dist/app-1.0.tar"));
+        assertNull(ArchiveExtractor.Format.of("/dist/app-1.0.pom"));
+    }
+
+    @Test
+    void shouldExtractZipWithParallelWriters() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("app/"));
+            for (int i = 0; i < 20; i++) {
+                zip.putNextEntry(new ZipEntry("app/file" + i + ".txt"));
+                zip.write(("content " + i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        int files = new ArchiveExtractor(directory, 4)
+                .extract(new ByteArrayInputStream(bytes.toByteArray()), ArchiveExtractor.Format.ZIP);
+
+        assertEquals(20, files);
+        for (int i = 0; i < 20; i++) {
+            assertEquals("content " + i, read(directory.resolve("app/file" + i + ".txt")));
+        }
+    }
+
+    @Test
+    void shouldExtractGzippedTarWithLongNamesAndExecutables() throws Exception {
+        String longName = "app/" + repeat("nested/", 20) + "file.txt";
+
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        tar.write(tarEntry("./", '5', 0755, new byte[0]));
+        tar.write(tarEntry("app/bin/run", '0', 0755, "#!/bin/sh".getBytes(StandardCharsets.UTF_8)));
+        tar.write(tarEntry("././@LongLink", 'L', 0644, longName.getBytes(StandardCharsets.UTF_8)));
+        tar.write(tarEntry(longName.substring(0, 99), '0', 0644, "long".getBytes(StandardCharsets.UTF_8)));
+        tar.write(tarEntry("PaxHeaders/pax", 'x', 0644, pax("path", "app/pax-name.txt")));
+        tar.write(tarEntry("truncated", '0', 0644, "pax".getBytes(StandardCharsets.UTF_8)));
+        tar.write(tarEntry("app/link", '2', 0777, new byte[0]));
+        tar.write(new byte[1024]);
+
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            tar.writeTo(gzip);
+        }
+
+        int files = new ArchiveExtractor(directory, 1)
+                .extract(new ByteArrayInputStream(gzipped.toByteArray()), ArchiveExtractor.Format.TAR_GZ);
+
+        assertEquals(3, files);
+        assertEquals("#!/bin/sh", read(directory.resolve("app/bin/run")));
+        assertTrue(Files.isExecutable(directory.resolve("app/bin/run")));
+        assertEquals("long", read(directory.resolve(longName)));
+        assertEquals("pax", read(directory.resolve("app/pax-name.txt")));
+        assertFalse(Files.exists(directory.resolve("truncated")));
+        assertFalse(Files.exists(directory.resolve("app/link")));
+    }
+
+    @Test
+    void shouldRejectEntriesOutsideTheDirectory() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("../evil.txt"));
+            zip.write(1);
+        }
+
+        Path target = directory.resolve("target");
+
+        IOException e = assertThrows(
+                IOException.class,
+                () -> new ArchiveExtractor(target, 1)
+                        .extract(new ByteArrayInputStream(bytes.toByteArray()), ArchiveExtractor.Format.ZIP));
+
+        assertTrue(e.getMessage().contains("outside"));
+        assertFalse(Files.exists(directory.resolve("evil.txt")));
+    }
+
+    @Test
+    void shouldFailOnTruncatedTar() throws Exception {
+        byte[] entry = tarEntry("file.txt", '0', 0644, new byte[2000]);
+        byte[] truncated = new byte[1000];
+        System.arraycopy(entry, 0, truncated, 0, truncated.length);
+
+        assertThrows(
+                IOException.class,
+                () -> new ArchiveExtractor(directory, 1)
+                        .extract(new ByteArrayInputStream(truncated), ArchiveExtractor.Format.TAR));
+    }
+
+    static byte[] tarEntry(String name, char type, int mode, byte[] content) {
+        byte[] header = new byte[512];
+        put(header, 0, name);
+        put(header, 100, String.format("%07o", mode));
+        put(header, 124, String.format("%011o", content.length));
+        put(header, 136, String.format("%011o", 1700000000L));
+        put(header, 148, "        ");
+        header[156] = (byte) type;
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+
+        int padded = (content.length + 511) / 512 * 512;
+        byte[] entry = new byte[512 + padded];
+        System.arraycopy(header, 0, entry, 0, 512);
+        System.arraycopy(content, 0, entry, 512, content.length);
+        return entry;
+    }
+
+    private static byte[] pax(String key, String value) {
+        String record = " " + key + "=" + value + "\n";
+        int length = record.length();
+        length += String.valueOf(length + String.valueOf(length).length()).length();
+
+        return (length + record).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void put(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
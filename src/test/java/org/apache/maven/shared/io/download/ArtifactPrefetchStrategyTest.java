@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ArtifactPrefetchStrategyTest {
+
+    private final ArtifactPrefetchStrategy strategy = new ArtifactPrefetchStrategy();
+
+    @Test
+    void shouldPrefetchChecksumAndPomOfMainArtifact() {
+        assertEquals(
+                Arrays.asList(
+                        "https://repo/org/example/lib/1.0/lib-1.0.jar.sha1",
+                        "https://repo/org/example/lib/1.0/lib-1.0.pom"),
+                strategy.getRelatedUrls("https://repo/org/example/lib/1.0/lib-1.0.jar"));
+    }
+
+    @Test
+    void shouldPrefetchOnlyChecksumOfClassifiedArtifact() {
+        assertEquals(
+                Collections.singletonList("https://repo/org/example/lib/1.0/lib-1.0-sources.jar.sha1"),
+                strategy.getRelatedUrls("https://repo/org/example/lib/1.0/lib-1.0-sources.jar"));
+    }
+
+    @Test
+    void shouldNotPrefetchForChecksumsOrSignatures() {
+        for (String extension : Arrays.asList(".sha1", ".md5", ".sha256", ".sha512", ".asc")) {
+            assertEquals(
+                    Collections.emptyList(),
+                    strategy.getRelatedUrls("https://repo/org/example/lib/1.0/lib-1.0.jar" + extension),
+                    extension);
+        }
+    }
+
+    @Test
+    void shouldNotPrefetchForPomsOrOtherLayouts() {
+        assertEquals(Collections.emptyList(), strategy.getRelatedUrls("https://repo/org/example/lib/1.0/lib-1.0.pom"));
+        assertEquals(Collections.emptyList(), strategy.getRelatedUrls("https://example.com/download/file.jar"));
+        assertEquals(
+                Collections.emptyList(), strategy.getRelatedUrls("https://repo/org/example/lib/1.0/lib-1.0.jar?x=1"));
+    }
+}
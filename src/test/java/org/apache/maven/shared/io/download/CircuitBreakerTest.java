@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.shared.io.download.DefaultDownloadManager.CircuitState;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    @Test
+    void shouldOpenAfterThresholdOfFailuresInARow() {
+        CircuitBreaker breaker = new CircuitBreaker(3, TimeUnit.MINUTES.toNanos(1));
+
+        assertTrue(breaker.allow());
+        assertFalse(breaker.onFailure());
+        assertTrue(breaker.allow());
+        assertFalse(breaker.onFailure());
+        assertTrue(breaker.allow());
+        assertTrue(breaker.onFailure());
+
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        assertFalse(breaker.allow());
+        assertTrue(breaker.remainingCoolDownNanos() > 0);
+    }
+
+    @Test
+    void shouldResetFailuresOnSuccess() {
+        CircuitBreaker breaker = new CircuitBreaker(2, TimeUnit.MINUTES.toNanos(1));
+
+        assertTrue(breaker.allow());
+        breaker.onFailure();
+        assertTrue(breaker.allow());
+        breaker.onSuccess();
+        assertTrue(breaker.allow());
+        assertFalse(breaker.onFailure());
+
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void shouldLetOneProbeThroughAfterCoolDownAndCloseWhenItSucceeds() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+
+        assertTrue(breaker.allow());
+        assertTrue(breaker.onFailure());
+
+        assertTrue(breaker.allow(), "the cool-down is over, so one probe goes through");
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allow(), "only one probe at a time");
+
+        breaker.onSuccess();
+
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        assertTrue(breaker.allow());
+    }
+
+    @Test
+    void shouldOpenAgainWhenProbeFails() {
+        CircuitBreaker breaker = new CircuitBreaker(5, 0);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(breaker.allow());
+            breaker.onFailure();
+        }
+
+        assertTrue(breaker.allow());
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+
+        assertTrue(breaker.onFailure(), "a failed probe opens the circuit at once");
+        assertEquals(CircuitState.OPEN, breaker.getState());
+    }
+
+    @Test
+    void shouldAllowAnotherProbeWhenProbeIsAbandoned() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+
+        assertTrue(breaker.allow());
+        breaker.onFailure();
+        assertTrue(breaker.allow());
+
+        breaker.onAbandoned();
+
+        assertTrue(breaker.allow());
+    }
+}
@@ -18,11 +18,17 @@
  */
 package org.apache.maven.shared.io.download;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -32,44 +38,64 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import com.sun.net.httpserver.HttpServer;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.maven.artifact.manager.WagonManager;
+import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.shared.io.logging.DefaultMessageHolder;
 import org.apache.maven.shared.io.logging.MessageHolder;
 import org.apache.maven.wagon.ConnectionException;
 import org.apache.maven.wagon.ResourceDoesNotExistException;
+import org.apache.maven.wagon.StreamingWagon;
 import org.apache.maven.wagon.TransferFailedException;
 import org.apache.maven.wagon.UnsupportedProtocolException;
 import org.apache.maven.wagon.Wagon;
 import org.apache.maven.wagon.authentication.AuthenticationException;
 import org.apache.maven.wagon.authentication.AuthenticationInfo;
 import org.apache.maven.wagon.authorization.AuthorizationException;
+import org.apache.maven.wagon.observers.AbstractTransferListener;
+import org.apache.maven.wagon.events.TransferEvent;
 import org.apache.maven.wagon.events.TransferListener;
 import org.apache.maven.wagon.proxy.ProxyInfo;
 import org.apache.maven.wagon.repository.Repository;
+import org.apache.maven.wagon.resource.Resource;
 import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.anyString;
 import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.captureInt;
 import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
 import static org.easymock.EasyMock.newCapture;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -474,87 +500,1241 @@ class DefaultDownloadManagerTest {
 
     @Test
     void shouldFailToDownloadNonFileUrlWithoutAuthority() throws Exception {
-        // The wagon is resolved before the base URL is built, so this gets past the protocol check.
+        // Checked before a Wagon is borrowed, so none is requested.
+        replay(wagon, wagonManager);
+
+        DownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+
+        try {
+            downloadManager.download("http:/path/file.jar", new DefaultMessageHolder());
+
+            fail("Should not download a URL without an authority component.");
+        } catch (DownloadFailedException e) {
+            assertTrue(e.getMessage().contains("without an authority component"));
+        }
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldDownloadFileUrlWithoutAuthority() throws Exception {
+        File tempFile = Files.createTempFile("download-source", "test").toFile();
+        tempFile.deleteOnExit();
+
+        Capture<Repository> repoCapture = newCapture();
+
+        expect(wagonManager.getWagon("file")).andReturn(wagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy(anyString())).andReturn(null);
+        wagon.connect(capture(repoCapture), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        wagon.get(anyString(), anyObject(File.class));
+        wagon.disconnect();
+
+        replay(wagon, wagonManager);
+
+        DownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+
+        // File URLs have no authority (file:/tmp/...); wagon resolves these against localhost.
+        downloadManager.download("file:" + tempFile.getAbsolutePath(), new DefaultMessageHolder());
+
+        verify(wagon, wagonManager);
+
+        assertEquals("file:", repoCapture.getValue().getUrl());
+    }
+
+    @Test
+    void shouldDownloadConcurrentlyAndCacheResults() throws Exception {
+        File tempFile = Files.createTempFile("download-source", "test").toFile();
+        tempFile.deleteOnExit();
+
+        expect(wagonManager.getWagon("file")).andReturn(wagon).anyTimes();
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null).anyTimes();
+        expect(wagonManager.getProxy(anyString())).andReturn(null).anyTimes();
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        expectLastCall().anyTimes();
+        wagon.get(anyString(), anyObject(File.class));
+        expectLastCall().anyTimes();
+        wagon.disconnect();
+        expectLastCall().anyTimes();
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager mgr = new DefaultDownloadManager(wagonManager);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(() -> {
+                try {
+                    mgr.download(tempFile.toURI().toASCIIString(), new DefaultMessageHolder());
+                } catch (DownloadFailedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        executor.shutdown();
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldLookUpWagonAuthenticationAndProxyOnlyOncePerProtocolAndRepository() throws Exception {
+        expect(wagonManager.getWagon("http")).andReturn(wagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        expectLastCall().times(2);
+        wagon.get(anyString(), anyObject(File.class));
+        expectLastCall().times(2);
+        wagon.disconnect();
+        expectLastCall().times(2);
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+
+        // Two different resources of the same repository: both download, but share all lookups.
+        downloadManager.download("http://example.com/first.jar", new DefaultMessageHolder());
+        downloadManager.download("http://example.com/second.jar", new DefaultMessageHolder());
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldLookUpAgainAfterInvalidateSettings() throws Exception {
+        expect(wagonManager.getWagon("http")).andReturn(wagon).times(2);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null).times(2);
+        expect(wagonManager.getProxy("http")).andReturn(null).times(2);
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        expectLastCall().times(2);
+        wagon.get(anyString(), anyObject(File.class));
+        expectLastCall().times(2);
+        wagon.disconnect();
+        expectLastCall().times(2);
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+
+        downloadManager.download("http://example.com/first.jar", new DefaultMessageHolder());
+        downloadManager.invalidateSettings();
+        downloadManager.download("http://example.com/second.jar", new DefaultMessageHolder());
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldNotReuseWagonThatFailedToDisconnect() throws Exception {
+        expect(wagonManager.getWagon("http")).andReturn(wagon).times(2);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        expectLastCall().times(2);
+        wagon.get(anyString(), anyObject(File.class));
+        expectLastCall().times(2);
+        wagon.disconnect();
+        expectLastCall().andThrow(new ConnectionException("not connected"));
+        wagon.disconnect();
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+
+        downloadManager.download("http://example.com/first.jar", new DefaultMessageHolder());
+        downloadManager.download("http://example.com/second.jar", new DefaultMessageHolder());
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldServeLocalFileDirectlyWithoutWagon() throws Exception {
+        File tempFile = Files.createTempFile("download source", "test").toFile();
+        tempFile.deleteOnExit();
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setLocalFileMode(DefaultDownloadManager.LocalFileMode.DIRECT);
+
+        String url = tempFile.toURI().toASCIIString();
+
+        File downloaded = downloadManager.download(url, new DefaultMessageHolder());
+
+        assertEquals(tempFile.getCanonicalFile(), downloaded.getCanonicalFile());
+        assertSame(downloaded, downloadManager.download(url, new DefaultMessageHolder()));
+
+        downloadManager.cleanup();
+
+        assertTrue(tempFile.exists(), "cleanup() must not delete the source of a direct download");
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldLinkOrCopyLocalFileIntoDownloadDirectoryWithoutWagon() throws Exception {
+        File tempFile = Files.createTempFile("download-source", "test").toFile();
+        tempFile.deleteOnExit();
+        Files.write(tempFile.toPath(), "content".getBytes("UTF-8"));
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setLocalFileMode(DefaultDownloadManager.LocalFileMode.COPY);
+
+        File downloaded = downloadManager.download(tempFile.toURI().toASCIIString(), new DefaultMessageHolder());
+
+        assertFalse(tempFile.getCanonicalFile().equals(downloaded.getCanonicalFile()));
+        assertEquals("content", new String(Files.readAllBytes(downloaded.toPath()), "UTF-8"));
+
+        downloadManager.cleanup();
+
+        assertFalse(downloaded.exists(), "cleanup() must delete the copy");
+        assertTrue(tempFile.exists(), "cleanup() must not delete the source");
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldFailToServeMissingLocalFile() throws Exception {
+        File tempFile = Files.createTempFile("download-source", "test").toFile();
+        assertTrue(tempFile.delete());
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setLocalFileMode(DefaultDownloadManager.LocalFileMode.COPY);
+
+        DownloadFailedException e = assertThrows(
+                DownloadFailedException.class,
+                () -> downloadManager.download(tempFile.toURI().toASCIIString(), new DefaultMessageHolder()));
+
+        assertTrue(e.getMessage().contains("no such file"));
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldDownloadLargeHttpResourceInConcurrentSegments() throws Exception {
+        byte[] content = new byte[256 * 1024];
+        new Random(42).nextBytes(content);
+
+        HttpServer server = startServer(content, true);
+        try {
+            expect(wagonManager.getWagon("http")).andReturn(wagon);
+            expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+            expect(wagonManager.getProxy("http")).andReturn(null);
+
+            AtomicLong transferred = new AtomicLong();
+            TransferListener listener = new AbstractTransferListener() {
+                @Override
+                public void transferProgress(TransferEvent transferEvent, byte[] buffer, int length) {
+                    transferred.addAndGet(length);
+                }
+            };
+            wagon.addTransferListener(listener);
+            wagon.removeTransferListener(listener);
+            expect(wagon.getTimeout()).andStubReturn(Wagon.DEFAULT_CONNECTION_TIMEOUT);
+            expect(wagon.getReadTimeout()).andStubReturn(Wagon.DEFAULT_READ_TIMEOUT);
+
+            replay(wagon, wagonManager);
+
+            DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+            downloadManager.setSegmentedDownload(1024, 4);
+
+            File downloaded = downloadManager.download(
+                    serverUrl(server) + "/bundle.zip", Collections.singletonList(listener), new DefaultMessageHolder());
+
+            assertArrayEquals(content, Files.readAllBytes(downloaded.toPath()));
+            assertEquals(content.length, transferred.get());
+            assertEquals(4, rangeRequests.get());
+
+            verify(wagon, wagonManager);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void shouldNotSendTheCredentialsToTheHostARedirectNames() throws Exception {
+        byte[] content = new byte[256 * 1024];
+        new Random(42).nextBytes(content);
+
+        HttpServer target = startServer(content, true);
+
+        HttpServer origin = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        origin.createContext("/", exchange -> {
+            exchange.getResponseHeaders()
+                    .add("Location", "http://localhost:" + target.getAddress().getPort() + "/bundle.zip");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        origin.start();
+        try {
+            AuthenticationInfo authenticationInfo = new AuthenticationInfo();
+            authenticationInfo.setUserName("user");
+            authenticationInfo.setPassword("secret");
+
+            expect(wagonManager.getWagon("http")).andReturn(wagon);
+            expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(authenticationInfo);
+            expect(wagonManager.getProxy("http")).andReturn(null);
+            expect(wagon.getTimeout()).andStubReturn(Wagon.DEFAULT_CONNECTION_TIMEOUT);
+            expect(wagon.getReadTimeout()).andStubReturn(Wagon.DEFAULT_READ_TIMEOUT);
+
+            replay(wagon, wagonManager);
+
+            DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+            downloadManager.setSegmentedDownload(1024, 4);
+
+            File downloaded = downloadManager.download(serverUrl(origin) + "/bundle.zip", new DefaultMessageHolder());
+
+            assertArrayEquals(content, Files.readAllBytes(downloaded.toPath()));
+            assertEquals(4, rangeRequests.get());
+            assertEquals(Collections.emptyList(), authorizations);
+
+            verify(wagon, wagonManager);
+        } finally {
+            origin.stop(0);
+            target.stop(0);
+        }
+    }
+
+    @Test
+    void shouldFallBackToWagonWhenServerDoesNotServeRanges() throws Exception {
+        HttpServer server = startServer(new byte[4096], false);
+        try {
+            expect(wagonManager.getWagon("http")).andReturn(wagon);
+            expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+            expect(wagonManager.getProxy("http")).andReturn(null);
+            expect(wagon.getTimeout()).andStubReturn(Wagon.DEFAULT_CONNECTION_TIMEOUT);
+            expect(wagon.getReadTimeout()).andStubReturn(Wagon.DEFAULT_READ_TIMEOUT);
+            wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+            wagon.get(anyString(), anyObject(File.class));
+            wagon.disconnect();
+
+            replay(wagon, wagonManager);
+
+            DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+            downloadManager.setSegmentedDownload(1024, 4);
+
+            downloadManager.download(serverUrl(server) + "/bundle.zip", new DefaultMessageHolder());
+
+            assertEquals(0, rangeRequests.get());
+
+            verify(wagon, wagonManager);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void shouldNotStartCancelledDownload() throws Exception {
+        replay(wagon, wagonManager);
+
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel();
+
+        DownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+
+        assertThrows(
+                DownloadCancelledException.class,
+                () -> downloadManager.download(
+                        "http://example.com/file.jar",
+                        Collections.<TransferListener>emptyList(),
+                        new DefaultMessageHolder(),
+                        0,
+                        TimeUnit.SECONDS,
+                        cancellation));
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldAbortTransferAndCleanUpWhenCancelledBetweenChunks() throws Exception {
+        CancellationToken cancellation = new CancellationToken();
+
+        expect(wagonManager.getWagon("http")).andReturn(wagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+
+        Capture<TransferListener> abortingListener = newCapture();
+        wagon.addTransferListener(capture(abortingListener));
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+
+        Capture<File> landingFile = newCapture();
+        wagon.get(anyString(), capture(landingFile));
+        expectLastCall().andAnswer(() -> {
+            cancellation.cancel();
+            abortingListener.getValue().transferProgress(null, new byte[1], 1);
+            return null;
+        });
+
+        wagon.disconnect();
+        wagon.removeTransferListener(anyObject(TransferListener.class));
+
+        replay(wagon, wagonManager);
+
+        DownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+
+        assertThrows(
+                DownloadCancelledException.class,
+                () -> downloadManager.download(
+                        "http://example.com/file.jar",
+                        Collections.<TransferListener>emptyList(),
+                        new DefaultMessageHolder(),
+                        0,
+                        TimeUnit.SECONDS,
+                        cancellation));
+
+        assertFalse(landingFile.getValue().exists(), "the landing file of a cancelled download must be deleted");
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldReturnTheProgressHubToIdleWhenADownloadIsAborted() throws Exception {
+        CancellationToken cancellation = new CancellationToken();
+
+        expect(wagonManager.getWagon("http")).andReturn(wagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+
+        Capture<TransferListener> listeners = newCapture(CaptureType.ALL);
+        wagon.addTransferListener(capture(listeners));
+        expectLastCall().times(2);
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+
+        wagon.get(anyString(), anyObject(File.class));
+        expectLastCall().andAnswer(() -> {
+            // A length the server did not announce, so the hub counts the download as of unknown length.
+            TransferEvent started = new TransferEvent(
+                    wagon, new Resource("file.jar"), TransferEvent.TRANSFER_STARTED, TransferEvent.REQUEST_GET);
+            for (TransferListener listener : listeners.getValues()) {
+                listener.transferStarted(started);
+            }
+
+            cancellation.cancel();
+            for (TransferListener listener : listeners.getValues()) {
+                listener.transferProgress(started, new byte[1], 1);
+            }
+            return null;
+        });
+
+        wagon.disconnect();
+        wagon.removeTransferListener(anyObject(TransferListener.class));
+        expectLastCall().times(2);
+
+        replay(wagon, wagonManager);
+
+        List<ProgressHub.Summary> summaries = new ArrayList<>();
+        ProgressHub hub = new ProgressHub(summaries::add, 1, TimeUnit.HOURS);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setProgressHub(hub);
+
+        assertThrows(
+                DownloadCancelledException.class,
+                () -> downloadManager.download(
+                        "http://example.com/file.jar",
+                        Collections.<TransferListener>emptyList(),
+                        new DefaultMessageHolder(),
+                        0,
+                        TimeUnit.SECONDS,
+                        cancellation));
+
+        hub.emit();
+        hub.close();
+
+        ProgressHub.Summary summary = summaries.get(0);
+        assertEquals(0, summary.getActiveDownloads());
+        assertEquals(1, summary.getCompletedDownloads());
+        assertEquals(0, summary.getTotalBytes());
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldShortenWagonTimeoutsToTheDeadlineAndRestoreThem() throws Exception {
+        expect(wagonManager.getWagon("http")).andReturn(wagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+
+        wagon.addTransferListener(anyObject(TransferListener.class));
+        expect(wagon.getTimeout()).andReturn(60000);
+        expect(wagon.getReadTimeout()).andReturn(0);
+
+        Capture<Integer> connectTimeouts = newCapture(CaptureType.ALL);
+        wagon.setTimeout(captureInt(connectTimeouts));
+        expectLastCall().times(2);
+
+        Capture<Integer> readTimeouts = newCapture(CaptureType.ALL);
+        wagon.setReadTimeout(captureInt(readTimeouts));
+        expectLastCall().times(2);
+
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        wagon.get(anyString(), anyObject(File.class));
+        wagon.disconnect();
+        wagon.removeTransferListener(anyObject(TransferListener.class));
+
+        replay(wagon, wagonManager);
+
+        DownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+
+        downloadManager.download(
+                "http://example.com/file.jar",
+                Collections.<TransferListener>emptyList(),
+                new DefaultMessageHolder(),
+                5,
+                TimeUnit.SECONDS,
+                null);
+
+        assertTrue(connectTimeouts.getValues().get(0) <= 5000);
+        assertEquals(60000, connectTimeouts.getValues().get(1));
+        assertTrue(readTimeouts.getValues().get(0) <= 5000);
+        assertEquals(0, readTimeouts.getValues().get(1));
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldReportConcurrencyLimitPerHostAndHalveItOnFailure() throws Exception {
+        expect(wagonManager.getWagon("http")).andReturn(wagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+        wagon.addTransferListener(anyObject(TransferListener.class));
+        expectLastCall().times(2);
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        expectLastCall().andThrow(new ConnectionException("connect error"));
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        wagon.get(anyString(), anyObject(File.class));
+        wagon.disconnect();
+        wagon.removeTransferListener(anyObject(TransferListener.class));
+        expectLastCall().times(2);
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setAdaptiveConcurrency(4, 16);
+
+        assertThrows(
+                DownloadFailedException.class,
+                () -> downloadManager.download("http://example.com/first.jar", new DefaultMessageHolder()));
+        downloadManager.download("http://example.com:80/second.jar", new DefaultMessageHolder());
+
+        assertEquals(Collections.singletonMap("example.com:80", 2), downloadManager.getConcurrencyLimits());
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldNotHoldAnExpiredDeadlineAgainstTheHost() throws Exception {
+        expect(wagonManager.getWagon("http")).andReturn(wagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+        wagon.addTransferListener(anyObject(TransferListener.class));
+        expectLastCall().times(2);
+        wagon.removeTransferListener(anyObject(TransferListener.class));
+        expectLastCall().times(2);
+        expect(wagon.getTimeout()).andStubReturn(60000);
+        expect(wagon.getReadTimeout()).andStubReturn(60000);
+        wagon.setTimeout(captureInt(newCapture()));
+        expectLastCall().anyTimes();
+        wagon.setReadTimeout(captureInt(newCapture()));
+        expectLastCall().anyTimes();
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        wagon.get(anyString(), anyObject(File.class));
+        expectLastCall().andAnswer(() -> {
+            // What a Wagon does when the read timeout, shortened to the deadline, passes.
+            Thread.sleep(100);
+            throw new TransferFailedException("Read timed out");
+        });
+        wagon.disconnect();
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setCircuitBreaker(1, 1, TimeUnit.MINUTES);
+        downloadManager.setAdaptiveConcurrency(4, 16);
+
+        assertThrows(
+                DownloadFailedException.class,
+                () -> downloadManager.download(
+                        "http://example.com/file.jar",
+                        Collections.<TransferListener>emptyList(),
+                        new DefaultMessageHolder(),
+                        50,
+                        TimeUnit.MILLISECONDS,
+                        null));
+
+        assertEquals(
+                Collections.singletonMap("example.com:80", DefaultDownloadManager.CircuitState.CLOSED),
+                downloadManager.getCircuitStates());
+        assertEquals(Collections.singletonMap("example.com:80", 4), downloadManager.getConcurrencyLimits());
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldFailFastWithoutConnectingOnceHostFailedRepeatedly() throws Exception {
+        expect(wagonManager.getWagon("http")).andReturn(wagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        expectLastCall().andThrow(new ConnectionException("connect error")).times(2);
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setCircuitBreaker(2, 1, TimeUnit.MINUTES);
+
+        MessageHolder mh = new DefaultMessageHolder();
+
+        for (int i = 0; i < 2; i++) {
+            DownloadFailedException e = assertThrows(
+                    DownloadFailedException.class,
+                    () -> downloadManager.download("http://example.com/file.jar", mh));
+            assertTrue(ExceptionUtils.getStackTrace(e).contains("ConnectionException"));
+        }
+
+        assertEquals(1, mh.countWarningMessages(), "opening the circuit must be reported");
+
+        DownloadFailedException e = assertThrows(
+                DownloadFailedException.class,
+                () -> downloadManager.download("http://example.com/other.jar", new DefaultMessageHolder()));
+        assertTrue(e.getMessage().contains("failed fast"));
+
+        assertEquals(
+                Collections.singletonMap("example.com:80", DefaultDownloadManager.CircuitState.OPEN),
+                downloadManager.getCircuitStates());
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldDownloadSmallContentIntoMemoryAndServeItFromTheCache() throws Exception {
+        StreamingWagon streamingWagon = createMock(StreamingWagon.class);
+        expect(wagonManager.getWagon("http")).andReturn(streamingWagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+        streamingWagon.connect(
+                anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        streamingWagon.getToStream(eq("/file.jar.sha1"), anyObject(OutputStream.class));
+        expectLastCall().andAnswer(() -> {
+            ((OutputStream) getCurrentArguments()[1]).write("0123456789".getBytes(StandardCharsets.US_ASCII));
+            return null;
+        });
+        streamingWagon.disconnect();
+
+        replay(streamingWagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+
+        List<Path> rootsBefore = listDownloadRoots();
+
+        for (int i = 0; i < 2; i++) {
+            ByteBuffer content = downloadManager.downloadToMemory(
+                    "http://example.com/file.jar.sha1", new DefaultMessageHolder());
+
+            assertTrue(content.isReadOnly());
+            assertEquals("0123456789", StandardCharsets.US_ASCII.decode(content).toString());
+        }
+
+        assertEquals(rootsBefore, listDownloadRoots(), "in-memory downloads must not touch the disk");
+
+        verify(streamingWagon, wagonManager);
+    }
+
+    @Test
+    void shouldSpillContentOverTheThresholdToAFileAndMapIt() throws Exception {
+        StreamingWagon streamingWagon = createMock(StreamingWagon.class);
+        expect(wagonManager.getWagon("http")).andReturn(streamingWagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+        streamingWagon.connect(
+                anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        streamingWagon.getToStream(eq("/file.pom"), anyObject(OutputStream.class));
+        expectLastCall().andAnswer(() -> {
+            OutputStream out = (OutputStream) getCurrentArguments()[1];
+            try {
+                out.write("012".getBytes(StandardCharsets.US_ASCII));
+                out.write("3456789".getBytes(StandardCharsets.US_ASCII));
+            } catch (IOException e) {
+                throw new TransferFailedException("write failed", e);
+            }
+            return null;
+        });
+        streamingWagon.disconnect();
+
+        replay(streamingWagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setInMemoryDownloads(4, 1024);
+
+        DefaultMessageHolder messageHolder = new DefaultMessageHolder();
+        ByteBuffer content = downloadManager.downloadToMemory("http://example.com/file.pom", messageHolder);
+
+        assertEquals("0123456789", StandardCharsets.US_ASCII.decode(content).toString());
+        assertTrue(messageHolder.render().contains("is larger than 4 bytes"));
+
+        File cached = downloadManager.download("http://example.com/file.pom", new DefaultMessageHolder());
+        assertEquals("0123456789", new String(Files.readAllBytes(cached.toPath()), StandardCharsets.US_ASCII));
+
+        verify(streamingWagon, wagonManager);
+
+        downloadManager.cleanup();
+    }
+
+    @Test
+    void shouldDownloadContentCachedInMemoryAgainOnceOlderThanTheMaxAge() throws Exception {
+        StreamingWagon streamingWagon = createMock(StreamingWagon.class);
+        expect(wagonManager.getWagon("http")).andReturn(streamingWagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+        streamingWagon.addTransferListener(anyObject(TransferListener.class));
+        expectLastCall().anyTimes();
+        streamingWagon.removeTransferListener(anyObject(TransferListener.class));
+        expectLastCall().anyTimes();
+        streamingWagon.connect(
+                anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        expectLastCall().times(2);
+        streamingWagon.getToStream(eq("/file.jar.sha1"), anyObject(OutputStream.class));
+        expectLastCall()
+                .andAnswer(() -> {
+                    ((OutputStream) getCurrentArguments()[1]).write('1');
+                    return null;
+                })
+                .andAnswer(() -> {
+                    ((OutputStream) getCurrentArguments()[1]).write('2');
+                    return null;
+                });
+        streamingWagon.disconnect();
+        expectLastCall().times(2);
+
+        replay(streamingWagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setMaxAge(50, TimeUnit.MILLISECONDS);
+
+        ByteBuffer first =
+                downloadManager.downloadToMemory("http://example.com/file.jar.sha1", new DefaultMessageHolder());
+        assertEquals('1', first.get());
+
+        Thread.sleep(100);
+
+        ByteBuffer second =
+                downloadManager.downloadToMemory("http://example.com/file.jar.sha1", new DefaultMessageHolder());
+        assertEquals('2', second.get());
+
+        verify(streamingWagon, wagonManager);
+    }
+
+    @Test
+    void shouldServeReleaseFilesFromTheLocalRepositoryWithoutWagon() throws Exception {
+        Path localRepo = Files.createTempDirectory("local-repo");
+        Path jar = localRepo.resolve("org/example/lib/1.0/lib-1.0.jar");
+        Files.createDirectories(jar.getParent());
+        Files.write(jar, new byte[] {1, 2, 3});
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setRepositoryTier(
+                repository(localRepo.toFile(), null),
+                Collections.singletonList(repository(null, "https://repo.example.com/maven2")),
+                false);
+
+        File downloaded = downloadManager.download(
+                "https://repo.example.com/maven2/org/example/lib/1.0/lib-1.0.jar", new DefaultMessageHolder());
+
+        assertEquals(jar.toFile().getCanonicalFile(), downloaded.getCanonicalFile());
+
+        verify(wagon, wagonManager);
+
+        deleteRecursively(localRepo);
+    }
+
+    @Test
+    void shouldPopulateTheLocalRepositoryOnAMiss() throws Exception {
+        Path localRepo = Files.createTempDirectory("local-repo");
+
+        expect(wagonManager.getWagon("https")).andReturn(wagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("https")).andReturn(null);
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        expectLastCall().times(4);
+        wagon.get(anyString(), anyObject(File.class));
+        expectLastCall()
+                .andAnswer(() -> {
+                    byte[] content = ((String) getCurrentArguments()[0]).endsWith(".sha1")
+                            ? "e809c5d1cea47b45e34701d23f608a9a58034dc9  lib-1.0.jar".getBytes()
+                            : new byte[] {4, 5, 6};
+                    Files.write(((File) getCurrentArguments()[1]).toPath(), content);
+                    return null;
+                })
+                .times(4);
+        wagon.disconnect();
+        expectLastCall().times(4);
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setRepositoryTier(
+                repository(localRepo.toFile(), null),
+                Collections.singletonList(repository(null, "https://repo.example.com/maven2/")),
+                true);
+
+        String base = "https://repo.example.com/maven2/org/example/lib/";
+        downloadManager.download(base + "1.0/lib-1.0.jar", new DefaultMessageHolder());
+        downloadManager.download(base + "maven-metadata.xml", new DefaultMessageHolder());
+        downloadManager.download(base + "1.1-SNAPSHOT/lib-1.1-SNAPSHOT.jar", new DefaultMessageHolder());
+
+        assertArrayEquals(
+                new byte[] {4, 5, 6}, Files.readAllBytes(localRepo.resolve("org/example/lib/1.0/lib-1.0.jar")));
+        assertFalse(Files.exists(localRepo.resolve("org/example/lib/maven-metadata.xml")));
+        assertFalse(Files.exists(localRepo.resolve("org/example/lib/1.1-SNAPSHOT")));
+
+        verify(wagon, wagonManager);
+
+        deleteRecursively(localRepo);
+    }
+
+    @Test
+    void shouldNotPopulateTheLocalRepositoryWithADownloadNotMatchingItsChecksum() throws Exception {
+        Path localRepo = Files.createTempDirectory("local-repo");
+
+        expect(wagonManager.getWagon("https")).andReturn(wagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("https")).andReturn(null);
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        expectLastCall().times(4);
+        wagon.get(eq("/maven2/org/example/lib/1.0/lib-1.0.jar"), anyObject(File.class));
+        expectLastCall().andAnswer(() -> {
+            Files.write(((File) getCurrentArguments()[1]).toPath(), new byte[] {4, 5, 6});
+            return null;
+        });
+        wagon.get(eq("/maven2/org/example/lib/1.0/lib-1.0.jar.sha1"), anyObject(File.class));
+        expectLastCall().andAnswer(() -> {
+            Files.write(((File) getCurrentArguments()[1]).toPath(), "0123456789abcdef".getBytes());
+            return null;
+        });
+        wagon.get(eq("/maven2/org/example/lib/1.0/lib-1.0.pom"), anyObject(File.class));
+        expectLastCall().andAnswer(() -> {
+            Files.write(((File) getCurrentArguments()[1]).toPath(), new byte[] {7});
+            return null;
+        });
+        wagon.get(eq("/maven2/org/example/lib/1.0/lib-1.0.pom.sha1"), anyObject(File.class));
+        expectLastCall().andThrow(new ResourceDoesNotExistException("missing"));
+        wagon.disconnect();
+        expectLastCall().times(4);
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setRepositoryTier(
+                repository(localRepo.toFile(), null),
+                Collections.singletonList(repository(null, "https://repo.example.com/maven2/")),
+                true);
+
+        String base = "https://repo.example.com/maven2/org/example/lib/1.0/";
+        DefaultMessageHolder messageHolder = new DefaultMessageHolder();
+        File jar = downloadManager.download(base + "lib-1.0.jar", messageHolder);
+        File pom = downloadManager.download(base + "lib-1.0.pom", messageHolder);
+
+        assertArrayEquals(new byte[] {4, 5, 6}, Files.readAllBytes(jar.toPath()));
+        assertArrayEquals(new byte[] {7}, Files.readAllBytes(pom.toPath()));
+        assertFalse(Files.exists(localRepo.resolve("org/example/lib/1.0/lib-1.0.jar")));
+        assertFalse(Files.exists(localRepo.resolve("org/example/lib/1.0/lib-1.0.pom")));
+        assertFalse(Files.exists(localRepo.resolve("org/example/lib/1.0/lib-1.0.jar.sha1")));
+        assertTrue(messageHolder.render().contains("does not match the checksum 0123456789abcdef"));
+
+        verify(wagon, wagonManager);
+
+        deleteRecursively(localRepo);
+    }
+
+    @Test
+    void shouldFailFastWhenTheContentIsLargerThanTheUsableSpace() throws Exception {
         expect(wagonManager.getWagon("http")).andReturn(wagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+
+        Capture<TransferListener> preallocation = newCapture();
+        wagon.addTransferListener(capture(preallocation));
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+
+        Capture<File> landingFile = newCapture();
+        wagon.get(anyString(), capture(landingFile));
+        expectLastCall().andAnswer(() -> {
+            preallocation.getValue().transferStarted(transferStarted(Long.MAX_VALUE));
+            fail("the transfer must not go on");
+            return null;
+        });
+
+        wagon.disconnect();
+        wagon.removeTransferListener(anyObject(TransferListener.class));
 
         replay(wagon, wagonManager);
 
-        DownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setPreallocation(true);
 
-        try {
-            downloadManager.download("http:/path/file.jar", new DefaultMessageHolder());
+        DownloadFailedException e = assertThrows(
+                DownloadFailedException.class,
+                () -> downloadManager.download("http://example.com/huge.zip", new DefaultMessageHolder()));
 
-            fail("Should not download a URL without an authority component.");
-        } catch (DownloadFailedException e) {
-            assertTrue(e.getMessage().contains("without an authority component"));
-        }
+        assertTrue(e.getMessage().contains("usable"));
+        assertFalse(landingFile.getValue().exists());
 
         verify(wagon, wagonManager);
     }
 
     @Test
-    void shouldDownloadFileUrlWithoutAuthority() throws Exception {
-        File tempFile = Files.createTempFile("download-source", "test").toFile();
-        tempFile.deleteOnExit();
+    void shouldStreamIntoALandingFileSizedToTheContentLength() throws Exception {
+        StreamingWagon streamingWagon = createMock(StreamingWagon.class);
+        expect(wagonManager.getWagon("http")).andReturn(streamingWagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+
+        Capture<TransferListener> preallocation = newCapture();
+        streamingWagon.addTransferListener(capture(preallocation));
+        streamingWagon.connect(
+                anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+
+        AtomicInteger sizedLandingFiles = new AtomicInteger();
+        streamingWagon.getToStream(eq("/file.zip"), anyObject(OutputStream.class));
+        expectLastCall().andAnswer(() -> {
+            preallocation.getValue().transferStarted(transferStarted(4099));
+            for (String file : listDownloadTempFiles()) {
+                if (Files.size(Paths.get(file)) == 4099) {
+                    sizedLandingFiles.incrementAndGet();
+                }
+            }
 
-        Capture<Repository> repoCapture = newCapture();
+            // Less than announced, which must not leave the rest of the sized file behind.
+            ((OutputStream) getCurrentArguments()[1]).write(new byte[] {7, 8, 9});
+            return null;
+        });
 
-        expect(wagonManager.getWagon("file")).andReturn(wagon);
+        streamingWagon.disconnect();
+        streamingWagon.removeTransferListener(anyObject(TransferListener.class));
+
+        replay(streamingWagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setPreallocation(true);
+
+        File downloaded = downloadManager.download("http://example.com/file.zip", new DefaultMessageHolder());
+
+        assertEquals(1, sizedLandingFiles.get());
+        assertArrayEquals(new byte[] {7, 8, 9}, Files.readAllBytes(downloaded.toPath()));
+
+        verify(streamingWagon, wagonManager);
+
+        downloadManager.cleanup();
+    }
+
+    @Test
+    void shouldExtractArchiveWhileItDownloads() throws Exception {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            for (int i = 0; i < 50; i++) {
+                zip.putNextEntry(new ZipEntry("dist/file" + i + ".txt"));
+                zip.write(new byte[10 * 1024]);
+            }
+        }
+
+        StreamingWagon streamingWagon = createMock(StreamingWagon.class);
+        expect(wagonManager.getWagon("http")).andReturn(streamingWagon);
         expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
-        expect(wagonManager.getProxy(anyString())).andReturn(null);
-        wagon.connect(capture(repoCapture), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        expect(wagonManager.getProxy("http")).andReturn(null);
+        streamingWagon.connect(
+                anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        streamingWagon.getToStream(eq("/dist.zip"), anyObject(OutputStream.class));
+        expectLastCall().andAnswer(() -> {
+            OutputStream out = (OutputStream) getCurrentArguments()[1];
+            byte[] bytes = archive.toByteArray();
+            for (int offset = 0; offset < bytes.length; offset += 1000) {
+                out.write(bytes, offset, Math.min(1000, bytes.length - offset));
+            }
+            return null;
+        });
+        streamingWagon.disconnect();
+
+        replay(streamingWagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setExtraction(4096, 2);
+
+        Path directory = Files.createTempDirectory("extracted");
+        Set<String> tempFilesBefore = listDownloadTempFiles();
+
+        int files = downloadManager.downloadAndExtract(
+                "http://example.com/dist.zip", directory.toFile(), new DefaultMessageHolder());
+
+        assertEquals(50, files);
+        assertEquals(10 * 1024, Files.size(directory.resolve("dist/file49.txt")));
+        assertEquals(tempFilesBefore, listDownloadTempFiles(), "the archive must not land in a file");
+
+        verify(streamingWagon, wagonManager);
+
+        deleteRecursively(directory);
+    }
+
+    @Test
+    void shouldReportAFailedExtractionAsSuchAndNotAsAFailureOfTheHost() throws Exception {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            zip.putNextEntry(new ZipEntry("../outside.txt"));
+            zip.write(new byte[100 * 1024]);
+        }
+
+        StreamingWagon streamingWagon = createMock(StreamingWagon.class);
+        expect(wagonManager.getWagon("http")).andReturn(streamingWagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+        streamingWagon.connect(
+                anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        streamingWagon.getToStream(eq("/evil.zip"), anyObject(OutputStream.class));
+        expectLastCall().andAnswer(() -> {
+            try {
+                ((OutputStream) getCurrentArguments()[1]).write(archive.toByteArray());
+            } catch (IOException e) {
+                throw new TransferFailedException("write failed", e);
+            }
+            return null;
+        });
+        streamingWagon.disconnect();
+
+        replay(streamingWagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setExtraction(1024, 1);
+        downloadManager.setCircuitBreaker(1, 1, TimeUnit.MINUTES);
+
+        Path directory = Files.createTempDirectory("extracted");
+
+        DownloadFailedException e = assertThrows(
+                DownloadFailedException.class,
+                () -> downloadManager.downloadAndExtract(
+                        "http://example.com/evil.zip", directory.toFile(), new DefaultMessageHolder()));
+
+        assertTrue(ExceptionUtils.getStackTrace(e).contains("outside the target directory"));
+        assertEquals(
+                Collections.singletonMap("example.com:80", DefaultDownloadManager.CircuitState.CLOSED),
+                downloadManager.getCircuitStates());
+
+        verify(streamingWagon, wagonManager);
+
+        deleteRecursively(directory);
+    }
+
+    @Test
+    void shouldServeDownloadsOfAnEarlierManagerFromAPersistentDirectory() throws Exception {
+        Path directory = Files.createTempDirectory("persistent-downloads");
+
+        expect(wagonManager.getWagon("http")).andReturn(wagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
         wagon.get(anyString(), anyObject(File.class));
+        expectLastCall().andAnswer(() -> {
+            Files.write(((File) getCurrentArguments()[1]).toPath(), new byte[] {1, 2, 3});
+            return null;
+        });
         wagon.disconnect();
 
         replay(wagon, wagonManager);
 
-        DownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        File downloaded = new DefaultDownloadManager(wagonManager, directory.toFile())
+                .download("http://example.com/file.jar", new DefaultMessageHolder());
 
-        // File URLs have no authority (file:/tmp/...); wagon resolves these against localhost.
-        downloadManager.download("file:" + tempFile.getAbsolutePath(), new DefaultMessageHolder());
+        assertEquals(directory.toFile(), downloaded.getParentFile());
+
+        DefaultDownloadManager restarted = new DefaultDownloadManager(wagonManager, directory.toFile());
+
+        assertEquals(downloaded, restarted.download("http://example.com/file.jar", new DefaultMessageHolder()));
 
         verify(wagon, wagonManager);
 
-        assertEquals("file:", repoCapture.getValue().getUrl());
+        restarted.cleanup();
+
+        assertFalse(downloaded.exists());
+        assertTrue(directory.resolve("downloads.idx").toFile().exists());
+
+        deleteRecursively(directory);
     }
 
     @Test
-    void shouldDownloadConcurrentlyAndCacheResults() throws Exception {
-        File tempFile = Files.createTempFile("download-source", "test").toFile();
-        tempFile.deleteOnExit();
+    void shouldDownloadAsynchronouslyAndCompleteCachedDownloadsAtOnce() throws Exception {
+        File source = Files.createTempFile("download-source", "test").toFile();
+        source.deleteOnExit();
+        String url = source.toURI().toASCIIString();
 
-        expect(wagonManager.getWagon("file")).andReturn(wagon).anyTimes();
-        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null).anyTimes();
-        expect(wagonManager.getProxy(anyString())).andReturn(null).anyTimes();
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setLocalFileMode(DefaultDownloadManager.LocalFileMode.DIRECT);
+        downloadManager.setAsyncDownloads(2, 100, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<File> first = downloadManager.downloadAsync(
+                url, DefaultDownloadManager.Priority.BACKGROUND, new DefaultMessageHolder());
+        assertEquals(source, first.get(10, TimeUnit.SECONDS));
+
+        CompletableFuture<File> second = downloadManager.downloadAsync(
+                url, DefaultDownloadManager.Priority.CRITICAL, new DefaultMessageHolder());
+        assertTrue(second.isDone(), "a cached download must not be queued");
+        assertEquals(source, second.get());
+
+        verify(wagon, wagonManager);
+    }
+
+    @Test
+    void shouldRevalidateStaleDownloadsAndFetchThemAgainOnlyWhenModified() throws Exception {
+        expect(wagonManager.getWagon("http")).andReturn(wagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+        Capture<TransferListener> listeners = newCapture(CaptureType.ALL);
+        wagon.addTransferListener(capture(listeners));
+        expectLastCall().times(3);
         wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        expectLastCall().times(3);
+        wagon.get(eq("/file.jar"), anyObject(File.class));
+        expectLastCall().andAnswer(() -> {
+            Resource resource = new Resource("file.jar");
+            resource.setLastModified(1000);
+            listeners.getValue()
+                    .transferStarted(new TransferEvent(
+                            wagon, resource, TransferEvent.TRANSFER_STARTED, TransferEvent.REQUEST_GET));
+            Files.write(((File) getCurrentArguments()[1]).toPath(), new byte[] {1});
+            return null;
+        });
+        expect(wagon.getIfNewer(eq("/file.jar"), anyObject(File.class), eq(1000L))).andReturn(false);
+        expect(wagon.getIfNewer(eq("/file.jar"), anyObject(File.class), eq(1000L)))
+                .andAnswer(() -> {
+                    Files.write(((File) getCurrentArguments()[1]).toPath(), new byte[] {2});
+                    return true;
+                });
+        wagon.disconnect();
+        expectLastCall().times(3);
+        wagon.removeTransferListener(anyObject(TransferListener.class));
+        expectLastCall().times(3);
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setMaxAge(1, TimeUnit.MILLISECONDS);
+
+        File first = downloadManager.download("http://example.com/file.jar", new DefaultMessageHolder());
+        Thread.sleep(10);
+
+        DefaultMessageHolder unmodified = new DefaultMessageHolder();
+        assertEquals(first, downloadManager.download("http://example.com/file.jar", unmodified));
+        assertTrue(unmodified.render().contains("Cached download is up to date"));
+        Thread.sleep(10);
+
+        File modified = downloadManager.download("http://example.com/file.jar", new DefaultMessageHolder());
+
+        assertNotEquals(first, modified);
+        assertArrayEquals(new byte[] {2}, Files.readAllBytes(modified.toPath()));
+
+        verify(wagon, wagonManager);
+
+        downloadManager.cleanup();
+    }
+
+    @Test
+    void shouldPrefetchTheChecksumAndPomOfADownloadedArtifact() throws Exception {
+        Path repository = Files.createTempDirectory("prefetch-repository");
+        Path version = Files.createDirectories(repository.resolve("org/example/lib/1.0"));
+        Path jar = Files.write(version.resolve("lib-1.0.jar"), new byte[] {1});
+        Files.write(version.resolve("lib-1.0.jar.sha1"), new byte[] {2});
+        Path pom = Files.write(version.resolve("lib-1.0.pom"), new byte[] {3});
+
+        replay(wagon, wagonManager);
+
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setLocalFileMode(DefaultDownloadManager.LocalFileMode.DIRECT);
+        downloadManager.setPrefetch(new ArtifactPrefetchStrategy(), 2, 1, TimeUnit.MINUTES);
+
+        downloadManager.download(jar.toUri().toASCIIString(), new DefaultMessageHolder());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (downloadManager.pendingPrefetches() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        DefaultMessageHolder messageHolder = new DefaultMessageHolder();
+        assertEquals(pom.toFile(), downloadManager.download(pom.toUri().toASCIIString(), messageHolder));
+        assertTrue(messageHolder.render().contains("Using cached download"));
+
+        verify(wagon, wagonManager);
+
+        deleteRecursively(repository);
+    }
+
+    @Test
+    void shouldTakeOverAQueuedPrefetchInsteadOfWaitingForIt() throws Exception {
+        Path repository = Files.createTempDirectory("prefetch-repository");
+        Path version = Files.createDirectories(repository.resolve("org/example/lib/1.0"));
+        Path jar = Files.write(version.resolve("lib-1.0.jar"), new byte[] {1});
+        Path pom = Files.write(version.resolve("lib-1.0.pom"), new byte[] {3});
+
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        expect(wagonManager.getWagon("http")).andReturn(wagon);
+        expect(wagonManager.getAuthenticationInfo(anyString())).andReturn(null);
+        expect(wagonManager.getProxy("http")).andReturn(null);
+        wagon.addTransferListener(anyObject(TransferListener.class));
         expectLastCall().anyTimes();
-        wagon.get(anyString(), anyObject(File.class));
+        wagon.removeTransferListener(anyObject(TransferListener.class));
         expectLastCall().anyTimes();
+        wagon.connect(anyObject(Repository.class), anyObject(AuthenticationInfo.class), anyObject(ProxyInfo.class));
+        wagon.get(anyString(), anyObject(File.class));
+        expectLastCall().andAnswer(() -> {
+            blocking.countDown();
+            release.await();
+            return null;
+        });
         wagon.disconnect();
-        expectLastCall().anyTimes();
 
         replay(wagon, wagonManager);
 
-        DefaultDownloadManager mgr = new DefaultDownloadManager(wagonManager);
+        DefaultDownloadManager downloadManager = new DefaultDownloadManager(wagonManager);
+        downloadManager.setLocalFileMode(DefaultDownloadManager.LocalFileMode.DIRECT);
+        downloadManager.setAsyncDownloads(1, 1, TimeUnit.MINUTES);
+        downloadManager.setPrefetch(new ArtifactPrefetchStrategy(), 2, 0, TimeUnit.MILLISECONDS);
+
+        // Occupies the only async thread, so the prefetches stay queued.
+        CompletableFuture<File> slow = downloadManager.downloadAsync(
+                "http://example.com/slow.jar", DefaultDownloadManager.Priority.CRITICAL, new DefaultMessageHolder());
+        assertTrue(blocking.await(10, TimeUnit.SECONDS));
+
+        downloadManager.download(jar.toUri().toASCIIString(), new DefaultMessageHolder());
+
+        CompletableFuture<File> foreground = CompletableFuture.supplyAsync(() -> {
+            try {
+                return downloadManager.download(pom.toUri().toASCIIString(), new DefaultMessageHolder());
+            } catch (DownloadFailedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
 
-        ExecutorService executor = Executors.newFixedThreadPool(4);
-        List<Future<?>> futures = new ArrayList<>();
-        for (int i = 0; i < 4; i++) {
-            futures.add(executor.submit(() -> {
-                try {
-                    mgr.download(tempFile.toURI().toASCIIString(), new DefaultMessageHolder());
-                } catch (DownloadFailedException e) {
-                    throw new RuntimeException(e);
-                }
-            }));
+        try {
+            assertEquals(pom.toFile(), foreground.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
         }
 
-        for (Future<?> future : futures) {
-            future.get();
-        }
+        slow.get(10, TimeUnit.SECONDS);
 
-        executor.shutdown();
         verify(wagon, wagonManager);
+
+        downloadManager.cleanup();
+        deleteRecursively(repository);
     }
 
     @Test
@@ -1006,6 +2186,80 @@ class DefaultDownloadManagerTest {
         replay(wagon, wagonManager);
     }
 
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+
+    private final List<String> authorizations = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Serves the content at any path, with byte ranges if asked to.
+     */
+    private HttpServer startServer(byte[] content, boolean serveRanges) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+
+        server.createContext("/", exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (exchange.getRequestHeaders().containsKey("Authorization")) {
+                authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            }
+            int first = 0;
+            int last = content.length - 1;
+            int status = 200;
+
+            if (serveRanges) {
+                exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+
+                if (range != null) {
+                    rangeRequests.incrementAndGet();
+
+                    String[] bounds = range.substring("bytes=".length()).split("-");
+                    first = Integer.parseInt(bounds[0]);
+                    last = Integer.parseInt(bounds[1]);
+                    status = 206;
+                    exchange.getResponseHeaders()
+                            .add("Content-Range", "bytes " + first + "-" + last + "/" + content.length);
+                }
+            }
+
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+                exchange.sendResponseHeaders(status, -1);
+            } else {
+                exchange.sendResponseHeaders(status, last - first + 1);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(content, first, last - first + 1);
+                }
+            }
+
+            exchange.close();
+        });
+
+        server.start();
+
+        return server;
+    }
+
+    private static String serverUrl(HttpServer server) {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static TransferEvent transferStarted(long contentLength) {
+        Resource resource = new Resource("file");
+        resource.setContentLength(contentLength);
+
+        return new TransferEvent(
+                createMock(Wagon.class), resource, TransferEvent.TRANSFER_STARTED, TransferEvent.REQUEST_GET);
+    }
+
+    private static ArtifactRepository repository(File basedir, String url) {
+        ArtifactRepository repository = createMock(ArtifactRepository.class);
+        expect(repository.getBasedir())
+                .andStubReturn((basedir != null) ? basedir.getAbsolutePath() : null);
+        expect(repository.getUrl()).andStubReturn(url);
+        replay(repository);
+
+        return repository;
+    }
+
     private List<Path> listDownloadRoots() throws Exception {
         Path tempRoot = Paths.get(System.getProperty("java.io.tmpdir"));
         List<Path> roots = new ArrayList<>();
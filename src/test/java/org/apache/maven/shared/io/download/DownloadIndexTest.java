@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DownloadIndexTest {
+
+    private Path directory;
+
+    private Path indexFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("download-index");
+        indexFile = directory.resolve("downloads.idx");
+    }
+
+    @AfterEach
+    void tearDown() {
+        FileUtils.deleteQuietly(directory.toFile());
+    }
+
+    @Test
+    void shouldReloadAppendedEntriesWithTheLastRecordOfAUrlWinning() throws Exception {
+        File first = file("first", "1");
+        File second = file("second", "22");
+
+        DownloadIndex index = new DownloadIndex(indexFile);
+        assertTrue(index.load().isEmpty());
+        index.append(entry("http://example.com/a", first));
+        index.append(entry("http://example.com/b", first));
+        index.append(entry("http://example.com/b", second));
+
+        Map<String, DownloadIndex.Entry> entries = new DownloadIndex(indexFile).load();
+
+        assertEquals(2, entries.size());
+        assertEquals(first, entries.get("http://example.com/a").getFile());
+        assertEquals(second, entries.get("http://example.com/b").getFile());
+        assertTrue(entries.get("http://example.com/b").getFetchedAt() > 0);
+    }
+
+    @Test
+    void shouldDropEntriesWhoseFileIsGoneOrChanged() throws Exception {
+        File gone = file("gone", "1");
+        File changed = file("changed", "1");
+
+        DownloadIndex index = new DownloadIndex(indexFile);
+        index.load();
+        index.append(entry("http://example.com/gone", gone));
+        index.append(entry("http://example.com/changed", changed));
+
+        Files.delete(gone.toPath());
+        Files.write(changed.toPath(), "longer".getBytes());
+
+        assertTrue(new DownloadIndex(indexFile).load().isEmpty());
+    }
+
+    @Test
+    void shouldKeepRecordsBeforeATornRecordAndDropTheTornOne() throws Exception {
+        File kept = file("kept", "1");
+
+        DownloadIndex index = new DownloadIndex(indexFile);
+        index.load();
+        index.append(entry("http://example.com/kept", kept));
+        long intact = Files.size(indexFile);
+
+        Files.write(indexFile, new byte[] {0, 0, 1, 0, 42}, StandardOpenOption.APPEND);
+
+        Map<String, DownloadIndex.Entry> entries = new DownloadIndex(indexFile).load();
+
+        assertEquals(1, entries.size());
+        assertEquals(intact, Files.size(indexFile), "the torn record is compacted away");
+    }
+
+    @Test
+    void shouldStartOverFromAnotherVersion() throws Exception {
+        Files.write(indexFile, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+        assertTrue(new DownloadIndex(indexFile).load().isEmpty());
+        assertEquals(8, Files.size(indexFile));
+    }
+
+    @Test
+    void shouldCompactWhenMostRecordsAreObsolete() throws Exception {
+        File downloaded = file("file", "1");
+
+        DownloadIndex index = new DownloadIndex(indexFile);
+        index.load();
+        for (int i = 0; i < 100; i++) {
+            index.append(entry("http://example.com/file", downloaded));
+        }
+        long appended = Files.size(indexFile);
+
+        assertEquals(1, new DownloadIndex(indexFile).load().size());
+        assertTrue(Files.size(indexFile) < appended / 50);
+
+        index.clear();
+        assertTrue(new DownloadIndex(indexFile).load().isEmpty());
+        assertFalse(Files.size(indexFile) > 8);
+    }
+
+    @Test
+    void shouldNotLoseRecordsAppendedWhileAnotherIndexOfTheLogCompactsIt() throws Exception {
+        File downloaded = file("file", "1");
+
+        DownloadIndex appending = new DownloadIndex(indexFile);
+        DownloadIndex compacting = new DownloadIndex(indexFile);
+        appending.load();
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread compactor = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    compacting.load();
+                }
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        compactor.start();
+
+        try {
+            for (int i = 0; i < 200; i++) {
+                // Three records a URL keep most of the log obsolete, so every load compacts it.
+                for (int j = 0; j < 3; j++) {
+                    appending.append(entry("http://example.com/file" + i, downloaded));
+                }
+            }
+        } finally {
+            done.set(true);
+            compactor.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(200, new DownloadIndex(indexFile).load().size());
+    }
+
+    private static DownloadIndex.Entry entry(String url, File downloaded) {
+        return new DownloadIndex.Entry(url, downloaded, System.currentTimeMillis(), 0);
+    }
+
+    private File file(String name, String content) throws IOException {
+        return Files.write(directory.resolve(name), content.getBytes()).toFile();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemoryCacheTest {
+
+    @Test
+    void shouldHandOutIndependentReadOnlyBuffers() {
+        MemoryCache cache = new MemoryCache(100);
+        cache.put("a", content("abc"));
+
+        ByteBuffer first = cache.get("a");
+        first.get();
+
+        ByteBuffer second = cache.get("a");
+        assertEquals(0, second.position());
+        assertEquals(3, second.remaining());
+        assertTrue(second.isReadOnly());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedContentOverCapacity() {
+        MemoryCache cache = new MemoryCache(6);
+        cache.put("a", content("aaa"));
+        cache.put("b", content("bbb"));
+        cache.get("a");
+        cache.put("c", content("ccc"));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(6, cache.size());
+    }
+
+    @Test
+    void shouldNotCacheContentLargerThanCapacity() {
+        MemoryCache cache = new MemoryCache(2);
+        cache.put("a", content("aaa"));
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void shouldEvictWhenCapacityShrinks() {
+        MemoryCache cache = new MemoryCache(100);
+        cache.put("a", content("aaa"));
+        cache.put("b", content("bbb"));
+
+        cache.setCapacity(3);
+
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        assertEquals(3, cache.size());
+    }
+
+    private static ByteBuffer content(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+    }
+}
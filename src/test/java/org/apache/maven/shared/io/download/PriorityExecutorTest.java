@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriorityExecutorTest {
+
+    private final List<String> order = new CopyOnWriteArrayList<>();
+
+    @Test
+    void shouldRunMoreUrgentTasksFirst() throws Exception {
+        PriorityExecutor executor = new PriorityExecutor(1, TimeUnit.MINUTES.toNanos(1));
+        CountDownLatch release = block(executor);
+
+        executor.submit(2, () -> order.add("background"));
+        executor.submit(1, () -> order.add("normal"));
+        CompletableFuture<Boolean> last = executor.submit(0, () -> order.add("critical"));
+        executor.submit(0, () -> order.add("critical, later"));
+
+        release.countDown();
+        last.get(10, TimeUnit.SECONDS);
+        awaitCount(4);
+
+        assertEquals("[critical, critical, later, normal, background]", order.toString());
+
+        executor.shutdown();
+    }
+
+    @Test
+    void shouldLetWaitingTasksAgePastMoreUrgentOnes() throws Exception {
+        PriorityExecutor executor = new PriorityExecutor(1, TimeUnit.MILLISECONDS.toNanos(20));
+        CountDownLatch release = block(executor);
+
+        executor.submit(2, () -> order.add("background"));
+        Thread.sleep(100);
+        executor.submit(0, () -> order.add("critical"));
+
+        release.countDown();
+        awaitCount(2);
+
+        assertEquals("[background, critical]", order.toString());
+
+        executor.shutdown();
+    }
+
+    @Test
+    void shouldNotRunTasksCancelledWhileQueued() throws Exception {
+        PriorityExecutor executor = new PriorityExecutor(1, 0);
+        CountDownLatch release = block(executor);
+
+        CompletableFuture<Boolean> cancelled = executor.submit(0, () -> order.add("cancelled"));
+        assertTrue(cancelled.cancel(false));
+        executor.submit(0, () -> order.add("run"));
+        assertEquals(2, executor.getQueued());
+
+        release.countDown();
+        awaitCount(1);
+        Thread.sleep(50);
+
+        assertEquals("[run]", order.toString());
+
+        executor.shutdown();
+    }
+
+    private static CountDownLatch block(PriorityExecutor executor) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        executor.submit(0, () -> {
+            started.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        });
+        started.await();
+
+        return release;
+    }
+
+    private void awaitCount(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (order.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
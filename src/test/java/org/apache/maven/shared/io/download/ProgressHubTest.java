@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.download;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.wagon.Wagon;
+import org.apache.maven.wagon.events.TransferEvent;
+import org.apache.maven.wagon.events.TransferListener;
+import org.apache.maven.wagon.resource.Resource;
+import org.junit.jupiter.api.Test;
+
+import static org.easymock.EasyMock.createMock;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProgressHubTest {
+
+    private final List<ProgressHub.Summary> summaries = new ArrayList<>();
+
+    @Test
+    void shouldAggregateDownloadsAcrossHosts() {
+        ProgressHub hub = new ProgressHub(summaries::add, 1, TimeUnit.HOURS);
+
+        TransferListener first = hub.newListener("a.example.com:443");
+        TransferListener second = hub.newListener("b.example.com:443");
+
+        first.transferStarted(event(100));
+        second.transferStarted(event(300));
+        first.transferProgress(event(100), new byte[50], 50);
+        second.transferProgress(event(300), new byte[150], 150);
+
+        hub.emit();
+
+        ProgressHub.Summary summary = summaries.get(0);
+        assertEquals(200, summary.getTransferredBytes());
+        assertEquals(400, summary.getTotalBytes());
+        assertEquals(2, summary.getActiveDownloads());
+        assertEquals(0, summary.getCompletedDownloads());
+        assertTrue(summary.getBytesPerSecond() > 0);
+        assertTrue(summary.getRemainingMillis() >= 0);
+        assertEquals(2, summary.getBytesPerSecondByHost().size());
+        assertTrue(summary.getBytesPerSecondByHost().get("b.example.com:443")
+                > summary.getBytesPerSecondByHost().get("a.example.com:443"));
+
+        hub.close();
+    }
+
+    @Test
+    void shouldReportOnlyWhenProgressChanged() {
+        ProgressHub hub = new ProgressHub(summaries::add, 1, TimeUnit.HOURS);
+
+        TransferListener listener = hub.newListener("example.com:80");
+        listener.transferStarted(event(10));
+        listener.transferProgress(event(10), new byte[10], 10);
+
+        hub.emit();
+        hub.emit();
+        assertEquals(1, summaries.size());
+
+        listener.transferCompleted(event(10));
+        hub.emit();
+
+        assertEquals(2, summaries.size());
+        assertEquals(0, summaries.get(1).getActiveDownloads());
+        assertEquals(1, summaries.get(1).getCompletedDownloads());
+
+        hub.close();
+    }
+
+    @Test
+    void shouldNotEstimateWithoutContentLength() {
+        ProgressHub hub = new ProgressHub(summaries::add, 1, TimeUnit.HOURS);
+
+        TransferListener listener = hub.newListener("example.com:80");
+        listener.transferStarted(event(-1));
+        listener.transferProgress(event(-1), new byte[10], 10);
+
+        hub.emit();
+
+        assertEquals(-1, summaries.get(0).getRemainingMillis());
+
+        hub.close();
+    }
+
+    @Test
+    void shouldCountOnlyTransferredBytesOfFailedDownloads() {
+        ProgressHub hub = new ProgressHub(summaries::add, 1, TimeUnit.HOURS);
+
+        TransferListener listener = hub.newListener("example.com:80");
+        listener.transferStarted(event(100));
+        listener.transferProgress(event(100), new byte[30], 30);
+        listener.transferError(event(100));
+
+        hub.close();
+
+        assertEquals(1, summaries.size(), "closing reports the last change");
+        assertEquals(30, summaries.get(0).getTotalBytes());
+        assertEquals(1, summaries.get(0).getCompletedDownloads());
+    }
+
+    private static TransferEvent event(long contentLength) {
+        Resource resource = new Resource("file");
+        resource.setContentLength(contentLength);
+
+        return new TransferEvent(
+                createMock(Wagon.class), resource, TransferEvent.TRANSFER_PROGRESS, TransferEvent.REQUEST_GET);
+    }
+}
@@ -20,7 +20,11 @@ package org.apache.maven.shared.io.location;
 
 import java.io.File;
 import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
@@ -40,6 +44,7 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -478,4 +483,83 @@ class ArtifactLocatorStrategyTest {
 
         verify(factory, resolver, localRepository, artifact);
     }
+
+    @Test
+    void shouldResolveAllDistinctSpecsOnceAndConcurrently() throws Exception {
+        File tempFile = Files.createTempFile("artifact-location.", ".temp").toFile();
+        tempFile.deleteOnExit();
+
+        Artifact resolved = createMock(Artifact.class);
+        expect(resolved.getFile()).andStubReturn(tempFile);
+        Artifact missing = createMock(Artifact.class);
+        expect(missing.getId()).andStubReturn("group:missing:jar:version");
+
+        expect(factory.createArtifact("group", "artifact", "version", null, "jar"))
+                .andReturn(resolved);
+        expect(factory.createArtifact("group", "missing", "version", null, "jar"))
+                .andReturn(missing);
+
+        resolver.resolve(resolved, Collections.<ArtifactRepository>emptyList(), localRepository);
+        resolver.resolve(missing, Collections.<ArtifactRepository>emptyList(), localRepository);
+        expectLastCall()
+                .andThrow(new ArtifactNotFoundException(
+                        "not found",
+                        "group",
+                        "missing",
+                        "version",
+                        "jar",
+                        null,
+                        Collections.<ArtifactRepository>emptyList(),
+                        "http://nowhere.com",
+                        Collections.<String>emptyList(),
+                        new NullPointerException()));
+
+        replay(factory, resolver, localRepository, resolved, missing);
+
+        ArtifactLocatorStrategy strategy =
+                new ArtifactLocatorStrategy(factory, resolver, localRepository, Collections.EMPTY_LIST);
+        MessageHolder mh = new DefaultMessageHolder();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Location> locations = strategy.resolveAll(
+                    Arrays.asList("group:artifact:version", "group:missing:version", "group:artifact:version"),
+                    executor,
+                    mh);
+
+            assertEquals(3, locations.size());
+            assertSame(tempFile, locations.get(0).getFile());
+            assertNull(locations.get(1));
+            assertNotSame(locations.get(0), locations.get(2));
+            assertSame(tempFile, locations.get(2).getFile());
+            assertEquals(1, mh.size());
+            assertTrue(mh.render().contains("group:missing:version"));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(factory, resolver, localRepository, resolved, missing);
+    }
+
+    @Test
+    void shouldStopAtTheFirstFailureWhenResolvingAllOnTheCallingThread() {
+        expect(factory.createArtifact("group", "broken", "version", null, "jar"))
+                .andThrow(new IllegalStateException("broken factory"));
+
+        replay(factory, resolver, localRepository);
+
+        ArtifactLocatorStrategy strategy =
+                new ArtifactLocatorStrategy(factory, resolver, localRepository, Collections.EMPTY_LIST);
+
+        IllegalStateException e = assertThrows(
+                IllegalStateException.class,
+                () -> strategy.resolveAll(
+                        Arrays.asList("group:broken:version", "group:artifact:version"),
+                        null,
+                        new DefaultMessageHolder()));
+        assertEquals("broken factory", e.getMessage());
+
+        // The second specification was never resolved.
+        verify(factory, resolver, localRepository);
+    }
 }
@@ -18,13 +18,18 @@
  */
 package org.apache.maven.shared.io.location;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+
 import org.apache.maven.shared.io.logging.DefaultMessageHolder;
 import org.apache.maven.shared.io.logging.MessageHolder;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ClasspathResourceLocatorStrategyTest {
 
@@ -55,4 +60,45 @@ class ClasspathResourceLocatorStrategyTest {
         assertNotNull(location);
         assertEquals(0, mh.size());
     }
+
+    @Test
+    void shouldServeDirectoryResourceInPlace() throws Exception {
+        ClasspathResourceLocatorStrategy strategy = new ClasspathResourceLocatorStrategy();
+        strategy.setInPlace(true);
+
+        Location location = strategy.resolve("META-INF/maven/test.properties", new DefaultMessageHolder());
+
+        File file = location.getFile();
+        assertTrue(file.getPath().endsWith("test.properties"));
+        assertEquals(new File(getClass().getResource("/META-INF/maven/test.properties").toURI()), file);
+    }
+
+    @Test
+    void shouldStreamJarResourceAndExtractItOnlyOnDemand() throws Exception {
+        ClasspathResourceLocatorStrategy strategy = new ClasspathResourceLocatorStrategy();
+        strategy.setInPlace(true);
+
+        Location location = strategy.resolve("org/junit/jupiter/api/Test.class", new DefaultMessageHolder());
+
+        URLLocation urlLocation = assertInstanceOf(URLLocation.class, location);
+        byte[] magic = new byte[4];
+        assertEquals(4, location.read(magic));
+        assertEquals(0xCAFEBABE, ByteBuffer.wrap(magic).getInt());
+        assertNull(urlLocation.unsafeGetFile());
+
+        Location again = strategy.resolve("org/junit/jupiter/api/Test.class", new DefaultMessageHolder());
+        assertEquals(location.getFile(), again.getFile());
+
+        location.close();
+    }
+
+    @Test
+    void shouldResolveResourceWithClasspathScheme() {
+        MessageHolder mh = new DefaultMessageHolder();
+        Location location =
+                new ClasspathResourceLocatorStrategy().resolve("classpath:/META-INF/maven/test.properties", mh);
+
+        assertNotNull(location);
+        assertEquals(0, mh.size());
+    }
 }
@@ -22,8 +22,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -32,6 +36,7 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 
 class FileLocationTest {
 
@@ -166,4 +171,159 @@ class FileLocationTest {
             super(specification);
         }
     }
+
+    @Test
+    void shouldReadThroughMappedWindows() throws Exception {
+        File file = Files.createTempFile("test.", ".file-location").toFile();
+        file.deleteOnExit();
+
+        String testStr = "This is a test";
+
+        FileUtils.writeStringToFile(file, testStr, "US-ASCII");
+
+        FileLocation location = new FileLocation(file, file.getAbsolutePath());
+        location.setMapped(true);
+        location.setWindowSize(4);
+
+        assertEquals(4, location.getMappedBuffers().size());
+
+        ByteBuffer buffer = ByteBuffer.allocate(6);
+        assertEquals(6, location.read(buffer));
+        assertEquals("This i", new String(buffer.array(), StandardCharsets.US_ASCII));
+
+        try (InputStream stream = location.getInputStream()) {
+            assertEquals("s a test", IOUtils.toString(stream, StandardCharsets.US_ASCII));
+        }
+
+        assertEquals(-1, location.read(new byte[1]));
+        assertEquals(4, location.getMappedBuffers().get(0).remaining(), "buffers must not share the read position");
+
+        location.close();
+    }
+
+    @Test
+    void shouldNotExposeMappedBuffersUnlessMapped() throws Exception {
+        File file = Files.createTempFile("test.", ".file-location").toFile();
+        file.deleteOnExit();
+
+        FileLocation location = new FileLocation(file, file.getAbsolutePath());
+
+        assertThrows(IllegalStateException.class, location::getMappedBuffers);
+
+        location.open();
+
+        assertThrows(IllegalStateException.class, () -> location.setMapped(true));
+
+        location.close();
+    }
+
+    @Test
+    void shouldTransferTheRestOfTheFileToAChannel() throws Exception {
+        File file = Files.createTempFile("test.", ".file-location").toFile();
+        file.deleteOnExit();
+
+        FileUtils.writeStringToFile(file, "This is a test", "US-ASCII");
+
+        FileLocation location = new FileLocation(file, file.getAbsolutePath());
+        location.read(new byte[5]);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(9, location.transferTo(Channels.newChannel(out)));
+        assertEquals("is a test", new String(out.toByteArray(), StandardCharsets.US_ASCII));
+        assertEquals(-1, location.read(new byte[1]));
+
+        location.close();
+    }
+
+    @Test
+    void shouldStopTransferringWhenTheChannelTakesNoMoreBytes() throws Exception {
+        File file = Files.createTempFile("test.", ".file-location").toFile();
+        file.deleteOnExit();
+
+        FileUtils.writeStringToFile(file, "This is a test", "US-ASCII");
+
+        WritableByteChannel full = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                return 0;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {}
+        };
+
+        FileLocation location = new FileLocation(file, file.getAbsolutePath());
+
+        assertEquals(0, assertTimeoutPreemptively(Duration.ofSeconds(10), () -> location.transferTo(full)));
+
+        location.close();
+    }
+
+    @Test
+    void shouldStopTransferringAMappedFileWhenTheChannelTakesNoMoreBytes() throws Exception {
+        File file = Files.createTempFile("test.", ".file-location").toFile();
+        file.deleteOnExit();
+
+        FileUtils.writeStringToFile(file, "This is a test", "US-ASCII");
+
+        // Takes the first 6 bytes, one at a time, then nothing.
+        WritableByteChannel filling = new WritableByteChannel() {
+            private int taken;
+
+            @Override
+            public int write(ByteBuffer src) {
+                if (taken == 6 || !src.hasRemaining()) {
+                    return 0;
+                }
+                src.get();
+                taken++;
+                return 1;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {}
+        };
+
+        FileLocation location = new FileLocation(file, file.getAbsolutePath());
+        location.setMapped(true);
+        location.setWindowSize(4);
+
+        assertEquals(6, assertTimeoutPreemptively(Duration.ofSeconds(10), () -> location.transferTo(filling)));
+
+        byte[] rest = new byte[8];
+        assertEquals(8, location.read(rest));
+        assertEquals("a test", new String(rest, 2, 6, StandardCharsets.US_ASCII));
+
+        location.close();
+    }
+
+    @Test
+    void shouldCopyAMappedFileToAPath() throws Exception {
+        File file = Files.createTempFile("test.", ".file-location").toFile();
+        file.deleteOnExit();
+        Path copy = Files.createTempFile("test.", ".file-location-copy");
+        copy.toFile().deleteOnExit();
+
+        FileUtils.writeStringToFile(file, "This is a test", "US-ASCII");
+        Files.write(copy, "Some longer previous content".getBytes(StandardCharsets.US_ASCII));
+
+        FileLocation location = new FileLocation(file, file.getAbsolutePath());
+        location.setMapped(true);
+        location.setWindowSize(4);
+
+        assertEquals(14, location.copyTo(copy));
+        assertEquals("This is a test", new String(Files.readAllBytes(copy), StandardCharsets.US_ASCII));
+
+        location.close();
+    }
 }
@@ -26,6 +26,7 @@ import org.apache.maven.shared.io.logging.MessageHolder;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -67,4 +68,13 @@ class FileLocatorStrategyTest {
 
         assertEquals(1, mh.size());
     }
+
+    @Test
+    void shouldTakeSingleLetterSchemesForDrivesOnlyOnWindows() {
+        FileLocatorStrategy fls = new FileLocatorStrategy();
+
+        assertTrue(fls.isApplicable(null));
+        assertEquals(File.separatorChar == '\\', fls.isApplicable("c"));
+        assertFalse(fls.isApplicable("lib"));
+    }
 }
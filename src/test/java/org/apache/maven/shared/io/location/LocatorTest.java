@@ -18,21 +18,37 @@
  */
 package org.apache.maven.shared.io.location;
 
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.maven.shared.io.logging.DefaultMessageHolder;
 import org.apache.maven.shared.io.logging.MessageHolder;
 import org.junit.jupiter.api.Test;
 
+import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class LocatorTest {
@@ -133,4 +149,273 @@ class LocatorTest {
             return null;
         }
     }
+
+    @Test
+    void shouldHandOutDuplicatesOfCachedResolutionsUntilInvalidated() {
+        File file = new File("pom.xml");
+        LocatorStrategy strategy = createMock(LocatorStrategy.class);
+        expect(strategy.resolve(eq("pom.xml"), anyObject(MessageHolder.class)))
+                .andReturn(new FileLocation(file, "pom.xml"))
+                .times(2);
+        expect(strategy.isCacheable()).andReturn(true).times(2);
+        expect(strategy.isApplicable(null)).andStubReturn(true);
+
+        replay(strategy);
+
+        Locator locator = new Locator(Collections.singletonList(strategy), new DefaultMessageHolder());
+        locator.setResolutionCache(true, 0, TimeUnit.MILLISECONDS);
+
+        Location first = locator.resolve("pom.xml");
+        Location second = locator.resolve("pom.xml");
+
+        assertNotSame(first, second);
+        assertEquals("pom.xml", second.getSpecification());
+        assertEquals(1, locator.getCacheHits());
+        assertEquals(1, locator.getCacheMisses());
+
+        locator.invalidate("pom.xml");
+        locator.resolve("pom.xml");
+
+        assertEquals(2, locator.getCacheMisses());
+
+        verify(strategy);
+    }
+
+    @Test
+    void shouldForgetCachedResolutionsWhenTheStrategiesChange() {
+        LocatorStrategy strategy = createMock(LocatorStrategy.class);
+        expect(strategy.resolve(eq("pom.xml"), anyObject(MessageHolder.class)))
+                .andReturn(new FileLocation(new File("pom.xml"), "pom.xml"))
+                .times(3);
+        expect(strategy.isCacheable()).andReturn(true).times(3);
+        expect(strategy.isApplicable(null)).andStubReturn(true);
+
+        LocatorStrategy other = createMock(LocatorStrategy.class);
+        expect(other.isApplicable(null)).andStubReturn(false);
+
+        replay(strategy, other);
+
+        Locator locator = new Locator(Collections.singletonList(strategy), new DefaultMessageHolder());
+        locator.setResolutionCache(true, 0, TimeUnit.MILLISECONDS);
+
+        locator.resolve("pom.xml");
+        locator.addStrategy(other);
+        locator.resolve("pom.xml");
+
+        // Changed through the list handed out, which the locator does not see happen.
+        locator.getStrategies().remove(other);
+        locator.resolve("pom.xml");
+
+        assertEquals(0, locator.getCacheHits());
+        assertEquals(3, locator.getCacheMisses());
+
+        verify(strategy, other);
+    }
+
+    @Test
+    void shouldNotCacheResolutionsOfStrategiesThatAreNotCacheable() {
+        LocatorStrategy strategy = createMock(LocatorStrategy.class);
+        expect(strategy.resolve(eq("pom.xml"), anyObject(MessageHolder.class)))
+                .andReturn(new FileLocation(new File("pom.xml"), "pom.xml"))
+                .times(2);
+        expect(strategy.isCacheable()).andReturn(false).times(2);
+        expect(strategy.isApplicable(null)).andStubReturn(true);
+
+        replay(strategy);
+
+        Locator locator = new Locator(Collections.singletonList(strategy), new DefaultMessageHolder());
+        locator.setResolutionCache(true, 1, TimeUnit.MINUTES);
+
+        locator.resolve("pom.xml");
+        locator.resolve("pom.xml");
+
+        assertEquals(0, locator.getCacheHits());
+        assertEquals(2, locator.getCacheMisses());
+
+        verify(strategy);
+    }
+
+    @Test
+    void shouldRaceStrategiesButKeepTheirPrecedenceAndMessageOrder() throws Exception {
+        Location resolved = new FileLocation(new File("pom.xml"), "pom.xml");
+        CountDownLatch lastStarted = new CountDownLatch(1);
+        CountDownLatch lastInterrupted = new CountDownLatch(1);
+
+        LocatorStrategy slowMiss = (spec, mh) -> {
+            try {
+                lastStarted.await();
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mh.addMessage("first missed");
+            return null;
+        };
+        LocatorStrategy hit = (spec, mh) -> {
+            mh.addWarningMessage("second resolved");
+            return resolved;
+        };
+        LocatorStrategy hanging = (spec, mh) -> {
+            lastStarted.countDown();
+            try {
+                Thread.sleep(60000);
+            } catch (InterruptedException e) {
+                lastInterrupted.countDown();
+            }
+            return null;
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            MessageHolder mh = new DefaultMessageHolder();
+            Locator locator = new Locator(Arrays.asList(slowMiss, hit, hanging), mh);
+            locator.setConcurrentStrategies(executor);
+
+            assertSame(resolved, locator.resolve("pom.xml"));
+
+            assertEquals(2, mh.size());
+            assertEquals(1, mh.countWarningMessages());
+            assertTrue(mh.render().matches("(?s).*first missed.*second resolved.*"));
+            assertTrue(lastInterrupted.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldRaceStrategiesWithTheContextClassLoaderOfTheCaller() throws Exception {
+        File resources = Files.createTempDirectory("locator-resources").toFile();
+        FileUtils.writeStringToFile(new File(resources, "raced-resource.txt"), "raced", "US-ASCII");
+
+        // Started before the context class loader is set, so the pool threads do not inherit it.
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+        executor.prestartAllCoreThreads();
+
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {resources.toURI().toURL()}, null)) {
+            thread.setContextClassLoader(loader);
+
+            LocatorStrategy miss = (spec, mh) -> null;
+            LocatorStrategy classpath = new ClasspathResourceLocatorStrategy();
+            Locator locator = new Locator(Arrays.asList(miss, classpath), new DefaultMessageHolder());
+            locator.setConcurrentStrategies(executor);
+
+            Location location = locator.resolve("raced-resource.txt");
+
+            assertNotNull(location);
+            assertEquals("raced", FileUtils.readFileToString(location.getFile(), "US-ASCII"));
+        } finally {
+            thread.setContextClassLoader(original);
+            executor.shutdownNow();
+            FileUtils.deleteQuietly(resources);
+        }
+    }
+
+    @Test
+    void shouldResolveAllInOrderWithMessagesOfTheirOwn() throws Exception {
+        LocatorStrategy strategy = (spec, mh) -> {
+            mh.addMessage("resolving " + spec);
+            return spec.startsWith("missing") ? null : new FileLocation(new File(spec), spec);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            MessageHolder shared = new DefaultMessageHolder();
+            Locator locator = new Locator(Collections.singletonList(strategy), shared);
+
+            List<String> specs = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                specs.add(((i % 5 == 0) ? "missing-" : "file-") + i);
+            }
+
+            List<Locator.Result> results = locator.resolveAll(specs, executor);
+
+            assertEquals(specs.size(), results.size());
+            for (int i = 0; i < specs.size(); i++) {
+                Locator.Result result = results.get(i);
+
+                assertEquals(specs.get(i), result.getSpecification());
+                assertEquals(i % 5 == 0, result.getLocation() == null);
+                assertEquals(1, result.getMessageHolder().size());
+                assertTrue(result.getMessageHolder().render().contains("resolving " + specs.get(i)));
+            }
+            assertTrue(shared.isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldResolveAllWithTheContextClassLoaderOfTheCaller() throws Exception {
+        File resources = Files.createTempDirectory("locator-resources").toFile();
+        FileUtils.writeStringToFile(new File(resources, "first-resource.txt"), "first", "US-ASCII");
+        FileUtils.writeStringToFile(new File(resources, "second-resource.txt"), "second", "US-ASCII");
+
+        // Started before the context class loader is set, so the pool threads do not inherit it.
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+        executor.prestartAllCoreThreads();
+
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {resources.toURI().toURL()}, null)) {
+            thread.setContextClassLoader(loader);
+
+            Locator locator = new Locator(
+                    Collections.singletonList(new ClasspathResourceLocatorStrategy()), new DefaultMessageHolder());
+
+            List<Locator.Result> results =
+                    locator.resolveAll(Arrays.asList("first-resource.txt", "second-resource.txt"), executor);
+
+            assertEquals("first", FileUtils.readFileToString(results.get(0).getLocation().getFile(), "US-ASCII"));
+            assertEquals("second", FileUtils.readFileToString(results.get(1).getLocation().getFile(), "US-ASCII"));
+        } finally {
+            thread.setContextClassLoader(original);
+            executor.shutdownNow();
+            FileUtils.deleteQuietly(resources);
+        }
+    }
+
+    @Test
+    void shouldAskOnlyTheStrategiesApplicableToTheScheme() {
+        List<String> asked = new ArrayList<>();
+        LocatorStrategy urls = new URLLocatorStrategy() {
+            @Override
+            public Location resolve(String locationSpecification, MessageHolder messageHolder) {
+                asked.add("url");
+                return null;
+            }
+        };
+        LocatorStrategy files = new FileLocatorStrategy() {
+            @Override
+            public Location resolve(String locationSpecification, MessageHolder messageHolder) {
+                asked.add("file");
+                return null;
+            }
+        };
+        LocatorStrategy classpath = new ClasspathResourceLocatorStrategy() {
+            @Override
+            public Location resolve(String locationSpecification, MessageHolder messageHolder) {
+                asked.add("classpath");
+                return null;
+            }
+        };
+
+        Locator locator = new Locator(Arrays.asList(urls, files, classpath), new DefaultMessageHolder());
+
+        locator.resolve("https://example.com/rules.xml");
+        assertEquals(Collections.singletonList("url"), asked);
+
+        asked.clear();
+        locator.resolve("config/rules.xml");
+        assertEquals(Arrays.asList("file", "classpath"), asked);
+
+        asked.clear();
+        locator.resolve("classpath:/config/rules.xml");
+        assertEquals(Collections.singletonList("classpath"), asked);
+
+        asked.clear();
+        locator.resolve("org.example:rules:1.0");
+        assertEquals(Collections.emptyList(), asked);
+    }
 }
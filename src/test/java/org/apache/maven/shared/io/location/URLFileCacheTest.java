@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.io.location;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class URLFileCacheTest {
+
+    @Test
+    void shouldReuseTheCopyUntilTheUrlChanges() throws Exception {
+        File source = Files.createTempFile("url-file-cache.", ".test").toFile();
+        source.deleteOnExit();
+        FileUtils.writeStringToFile(source, "first", "US-ASCII");
+        source.setLastModified(1000000L);
+
+        URLFileCache cache = new URLFileCache(4);
+
+        File copy = cache.get(source.toURL(), "prefix.", ".suffix");
+        assertNotEquals(source, copy);
+        assertEquals(copy, cache.get(source.toURL(), "prefix.", ".suffix"));
+
+        FileUtils.writeStringToFile(source, "second", "US-ASCII");
+        source.setLastModified(2000000L);
+
+        File changed = cache.get(source.toURL(), "prefix.", ".suffix");
+        assertNotEquals(copy, changed, "a changed URL must be downloaded to a new copy");
+        assertEquals("second", FileUtils.readFileToString(changed, "US-ASCII"));
+        assertEquals("first", FileUtils.readFileToString(copy, "US-ASCII"), "a copy handed out must not change");
+    }
+
+    @Test
+    void shouldKeepAtMostItsCapacityAndKeepTheCopiesItEvicts() throws Exception {
+        URLFileCache cache = new URLFileCache(2);
+
+        List<File> copies = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            File source = Files.createTempFile("url-file-cache.", ".test").toFile();
+            source.deleteOnExit();
+
+            copies.add(cache.get(source.toURL(), "prefix.", ".suffix"));
+        }
+
+        assertEquals(2, cache.size());
+        assertTrue(copies.get(0).exists(), "the copy of an evicted URL may still be read");
+        assertTrue(copies.get(1).exists());
+        assertTrue(copies.get(2).exists());
+    }
+}
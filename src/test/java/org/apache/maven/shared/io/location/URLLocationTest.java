@@ -28,6 +28,7 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 class URLLocationTest {
 
@@ -89,4 +90,31 @@ class URLLocationTest {
 
         assertNotNull(location.getFile());
     }
+
+    @Test
+    void shouldStreamFromUrlAndOnlyCreateTempFileWhenAskedFor() throws Exception {
+        File f = Files.createTempFile("url-location.", ".test").toFile();
+        f.deleteOnExit();
+
+        String testStr = "This is a test";
+
+        FileUtils.writeStringToFile(f, testStr, "US-ASCII");
+
+        URLLocation location = new URLLocation(f.toURL(), f.getAbsolutePath(), "prefix.", ".suffix", true);
+        location.setStreaming(true);
+
+        byte[] buffer = new byte[4];
+        assertEquals(4, location.read(buffer));
+        assertEquals("This", new String(buffer, "US-ASCII"));
+        assertNull(location.unsafeGetFile());
+
+        File copy = location.getFile();
+        assertNotEquals(f, copy);
+        assertEquals(testStr, FileUtils.readFileToString(copy, "US-ASCII"));
+
+        assertEquals(4, location.read(buffer));
+        assertEquals(" is ", new String(buffer, "US-ASCII"));
+
+        location.close();
+    }
 }
@@ -75,4 +75,22 @@ class URLLocatorStrategyTest {
 
         assertEquals(testStr, new String(buffer, "US-ASCII"));
     }
+
+    @Test
+    void shouldShareTheFileOfAnUnchangedUrlAcrossStrategies() throws Exception {
+        File tempFile = Files.createTempFile("prefix.", ".suffix").toFile();
+        tempFile.deleteOnExit();
+
+        FileUtils.writeStringToFile(tempFile, "This is a test.", "US-ASCII");
+        String url = tempFile.toURL().toExternalForm();
+
+        URLLocatorStrategy first = new URLLocatorStrategy();
+        first.setSharedCache(true);
+        URLLocatorStrategy second = new URLLocatorStrategy();
+        second.setSharedCache(true);
+
+        MessageHolder mh = new DefaultMessageHolder();
+
+        assertEquals(first.resolve(url, mh).getFile(), second.resolve(url, mh).getFile());
+    }
 }